@@ -1,8 +1,147 @@
-import { exec } from 'child_process';
-import { promises as fs } from 'fs';
+import { spawn } from 'child_process';
 import path from 'path';
-import { tmpdir } from 'os';
-import { randomBytes } from 'crypto';
+
+const TIMEOUT_MS = 3000;
+const POOL_SIZE = 2;
+const MAX_RUNS_PER_WORKER = 200;
+
+// If Vercel env variable exists, use its dynamically downloaded Linux java path, otherwise use system java
+const javaPath = process.env.VERCEL ? path.join(process.cwd(), 'jre', 'bin', 'java') : 'java';
+const jarPath = path.join(process.cwd(), 'simpleflow-lang', 'simpleflow-lang.jar');
+
+// Warm `Main --serve` JVMs, kept across invocations of this function.
+const idle = [];
+const waiting = [];
+let workerCount = 0;
+
+class Worker {
+    constructor() {
+        this.runs = 0;
+        this.pending = null;
+        this.buffer = Buffer.alloc(0);
+        this.dead = false;
+
+        this.proc = spawn(javaPath, ['-cp', jarPath, 'com.simpleflow.lang.Main', '--serve'], {
+            stdio: ['pipe', 'pipe', 'ignore']
+        });
+        this.proc.stdout.on('data', (chunk) => this.onData(chunk));
+        this.proc.on('exit', () => this.onExit());
+        this.proc.on('error', (err) => this.onExit(err));
+        this.proc.stdin.on('error', () => { });
+    }
+
+    // request: int32 timeout ms, int32 length, UTF-8 source
+    run(code, timeoutMs) {
+        return new Promise((resolve, reject) => {
+            const source = Buffer.from(code, 'utf8');
+            const header = Buffer.alloc(8);
+            header.writeInt32BE(timeoutMs, 0);
+            header.writeInt32BE(source.length, 4);
+
+            // the worker stops the script itself at timeoutMs; this is the backstop
+            const timer = setTimeout(() => {
+                // settle first, or kill() would reject with 'Runner process exited'
+                this.pending = null;
+                reject(new Error(`Execution timed out (${timeoutMs}ms)`));
+                this.kill();
+            }, timeoutMs + 500);
+
+            this.pending = { resolve, reject, timer };
+            this.runs++;
+            this.proc.stdin.write(Buffer.concat([header, source]));
+        });
+    }
+
+    // response: int32 length, UTF-8 output, int32 length, UTF-8 stderr
+    onData(chunk) {
+        this.buffer = Buffer.concat([this.buffer, chunk]);
+        if (this.buffer.length < 4) {
+            return;
+        }
+        const length = this.buffer.readInt32BE(0);
+        if (this.buffer.length < 8 + length) {
+            return;
+        }
+        const errorLength = this.buffer.readInt32BE(4 + length);
+        if (this.buffer.length < 8 + length + errorLength) {
+            return;
+        }
+
+        const output = this.buffer.toString('utf8', 4, 4 + length);
+        const errors = this.buffer.toString('utf8', 8 + length, 8 + length + errorLength);
+        this.buffer = this.buffer.subarray(8 + length + errorLength);
+
+        const pending = this.pending;
+        this.pending = null;
+        if (pending) {
+            clearTimeout(pending.timer);
+            pending.resolve({ output, errors });
+        }
+    }
+
+    onExit(err) {
+        if (this.dead) {
+            return;
+        }
+        this.dead = true;
+        workerCount--;
+
+        const index = idle.indexOf(this);
+        if (index !== -1) {
+            idle.splice(index, 1);
+        }
+
+        const pending = this.pending;
+        this.pending = null;
+        if (pending) {
+            clearTimeout(pending.timer);
+            pending.reject(err || new Error('Runner process exited'));
+        }
+        handOff();
+    }
+
+    kill() {
+        this.proc.kill('SIGKILL');
+        this.onExit();
+    }
+}
+
+function acquire() {
+    if (idle.length > 0) {
+        return Promise.resolve(idle.pop());
+    }
+    if (workerCount < POOL_SIZE) {
+        workerCount++;
+        return Promise.resolve(new Worker());
+    }
+    return new Promise((resolve) => waiting.push(resolve));
+}
+
+function release(worker) {
+    if (worker.dead) {
+        return;
+    }
+    if (worker.runs >= MAX_RUNS_PER_WORKER) {
+        worker.proc.stdin.end(); // the worker exits at end of input
+        return;
+    }
+    idle.push(worker);
+    handOff();
+}
+
+// gives a free or newly started worker to the longest-waiting request
+function handOff() {
+    while (waiting.length > 0) {
+        if (idle.length > 0) {
+            waiting.shift()(idle.pop());
+        } else if (workerCount < POOL_SIZE) {
+            workerCount++;
+            waiting.shift()(new Worker());
+        } else {
+            return;
+        }
+    }
+}
 
 export default async function handler(req, res) {
     if (req.method !== 'POST') {
@@ -14,43 +153,19 @@ export default async function handler(req, res) {
         return res.status(400).json({ error: 'No code provided' });
     }
 
-    const fileId = randomBytes(8).toString('hex');
-    const tempFilePath = path.join(tmpdir(), `${fileId}.sf`);
-
+    const worker = await acquire();
     try {
-        await fs.writeFile(tempFilePath, code);
-
-        // If Vercel env variable exists, use its dynamically downloaded Linux java path, otherwise use system java
-        const javaPath = process.env.VERCEL ? path.join(process.cwd(), 'jre', 'bin', 'java') : 'java';
-        const jarPath = path.join(process.cwd(), 'simpleflow-lang', 'simpleflow-lang.jar');
-
-        const result = await new Promise((resolve) => {
-            exec(`"${javaPath}" -cp "${jarPath}" com.simpleflow.lang.Main "${tempFilePath}"`, { timeout: 3000 }, (error, stdout, stderr) => {
-                resolve({ error, stdout, stderr });
-            });
-        });
-
-        let output = result.stdout || '';
+        let { output, errors } = await worker.run(code, TIMEOUT_MS);
         if (output) {
             output = output.replace(/\r\n/g, '\n').trim();
         }
 
-        let errorStr = result.stderr || '';
-        if (result.error && !errorStr) {
-            if (result.error.killed) {
-                errorStr = 'Execution timed out (3000ms)';
-            } else {
-                errorStr = result.error.message;
-            }
-        }
-
-        res.status(200).json({ output, error: errorStr.trim() });
+        // lexer warnings such as 'Unexpected character' come back on stderr
+        res.status(200).json({ output, error: errors.replace(/\r\n/g, '\n').trim() });
 
     } catch (err) {
-        res.status(500).json({ error: err.message });
+        res.status(200).json({ output: '', error: err.message });
     } finally {
-        try {
-            await fs.unlink(tempFilePath);
-        } catch (e) { }
+        release(worker);
     }
 }
@@ -0,0 +1,34 @@
+package com.simpleflow.bench;
+
+import java.util.List;
+
+import org.openjdk.jol.info.GraphLayout;
+
+import com.simpleflow.lang.interpreter.Cell;
+
+// Deep size of typical small cells, measured with JOL. Not a JMH benchmark:
+// java -cp simpleflow-bench/target/benchmarks.jar com.simpleflow.bench.CellFootprint
+public class CellFootprint {
+
+    public static void main(String[] args) {
+        report("empty @()", new Cell(null));
+        report("tuple @(1, 2, 3)", new Cell(List.of(1, 2, 3)));
+        report("row of 10 ints", new Cell(List.of(1, 2, 3, 4, 5, 6, 7, 8, 9, 10)));
+        report("pair @(\"a\", \"b\")", new Cell(List.of("a", "b")));
+
+        Cell record = new Cell(null);
+        record.set("name", "x");
+        record.set("age", 3);
+        report("record with 2 keys", record);
+
+        Cell[] matrix = new Cell[100];
+        for (int i = 0; i < matrix.length; i++) {
+            matrix[i] = new Cell(List.of(i, i + 1, i + 2, i + 3));
+        }
+        report("100 rows of 4 ints", (Object) matrix);
+    }
+
+    private static void report(String label, Object value) {
+        System.out.printf("%-22s %8d bytes%n", label, GraphLayout.parseInstance(value).totalSize());
+    }
+}
@@ -0,0 +1,53 @@
+package com.simpleflow.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.simpleflow.lang.Main;
+import com.simpleflow.lang.interpreter.Program;
+
+// Runs a pre-compiled program on either engine, so only execution is timed.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EngineBenchmark {
+
+    @Param({ "fib", "nestedLoops", "cellOps", "stringConcat", "mergeSlice" })
+    public String workload;
+
+    @Param({ "tree", "vm" })
+    public String engine;
+
+    private Program program;
+    private boolean useVm;
+
+    @Setup
+    public void setUp() {
+        program = Main.compile(Workloads.named(workload));
+        useVm = engine.equals("vm");
+
+        String output = Main.run(program, useVm);
+        if (output.startsWith("Runtime error")) {
+            throw new IllegalStateException(workload + ": " + output);
+        }
+    }
+
+    @Benchmark
+    public String run() {
+        return Main.run(program, useVm);
+    }
+}
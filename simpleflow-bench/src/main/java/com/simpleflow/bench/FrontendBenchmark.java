@@ -0,0 +1,60 @@
+package com.simpleflow.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.simpleflow.lang.ast.Stmt;
+import com.simpleflow.lang.lexer.Lexer;
+import com.simpleflow.lang.lexer.Token;
+import com.simpleflow.lang.parser.Parser;
+
+// Lexing and parsing of a large source, on their own.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrontendBenchmark {
+
+    // copies of the workload set; 100 is roughly 2,800 lines
+    @Param({ "10", "100" })
+    public int copies;
+
+    private String source;
+    private List<Token> tokens;
+
+    @Setup
+    public void setUp() {
+        source = Workloads.large(copies);
+        tokens = new Lexer(source).scanTokens();
+    }
+
+    @Benchmark
+    public List<Token> lex() {
+        return new Lexer(source).scanTokens();
+    }
+
+    @Benchmark
+    public List<Stmt> parse() {
+        return new Parser(tokens).parse();
+    }
+
+    // what Main.compile does: the parser pulls tokens as it goes
+    @Benchmark
+    public List<Stmt> lexAndParse() {
+        return new Parser(new Lexer(source)).parse();
+    }
+}
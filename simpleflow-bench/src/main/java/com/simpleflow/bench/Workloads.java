@@ -0,0 +1,72 @@
+package com.simpleflow.bench;
+
+// SimpleFlow programs the benchmarks run. Each one stresses a single hot path.
+final class Workloads {
+
+    private Workloads() {
+    }
+
+    static final String FIB = """
+            define fib(n) {
+              when (n < 2) { return n }
+              return fib(n - 1) + fib(n - 2)
+            }
+            show fib(20)
+            """;
+
+    static final String NESTED_LOOPS = """
+            store s = 0
+            loop (store i = 0; i < 300; i++) {
+              loop (store j = 0; j < 300; j++) {
+                s = s + i * j
+              }
+            }
+            show s
+            """;
+
+    static final String CELL_OPS = """
+            store c = @()
+            loop (store i = 0; i < 5000; i++) { push(c, i) }
+            loop (store i = 0; i < 2500; i++) { pop(c) }
+            loop (store i = 0; i < 2000; i++) { shift(c) }
+            show length(c)
+            """;
+
+    static final String STRING_CONCAT = """
+            store t = ""
+            loop (store i = 0; i < 2000; i++) { t = t + "x" + i }
+            show t == ""
+            """;
+
+    static final String MERGE_SLICE = """
+            store a = @()
+            loop (store i = 0; i < 200; i++) { push(a, i) }
+            store m = a
+            loop (store i = 0; i < 500; i++) {
+              store b = slice(a, 10, 110)
+              m = merge(a, b)
+            }
+            show length(m)
+            """;
+
+    static String named(String name) {
+        return switch (name) {
+            case "fib" -> FIB;
+            case "nestedLoops" -> NESTED_LOOPS;
+            case "cellOps" -> CELL_OPS;
+            case "stringConcat" -> STRING_CONCAT;
+            case "mergeSlice" -> MERGE_SLICE;
+            default -> throw new IllegalArgumentException("Unknown workload: " + name);
+        };
+    }
+
+    // A long source for the front end: every workload above, repeated.
+    static String large(int copies) {
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < copies; i++) {
+            source.append(FIB).append(NESTED_LOOPS).append(CELL_OPS)
+                    .append(STRING_CONCAT).append(MERGE_SLICE);
+        }
+        return source.toString();
+    }
+}
@@ -0,0 +1,52 @@
+package com.simpleflow.lang;
+
+import java.io.Writer;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import com.simpleflow.lang.interpreter.Budget;
+import com.simpleflow.lang.interpreter.Engine;
+import com.simpleflow.lang.interpreter.Interpreter;
+import com.simpleflow.lang.interpreter.Program;
+import com.simpleflow.lang.vm.VM;
+
+// Keeps finished engines for the next run instead of building a new one,
+// with its globals and builtins, every time. An engine is reset on the way
+// out, so an idle one holds nothing of the program it last ran, and again
+// on the way in with the new run's output and budget.
+// Safe to use from any number of threads; each engine serves one run at a time.
+public final class EnginePool {
+
+    private static final EnginePool SHARED =
+            new EnginePool(2 * Runtime.getRuntime().availableProcessors());
+
+    private final ArrayBlockingQueue<Engine> interpreters;
+    private final ArrayBlockingQueue<Engine> vms;
+
+    // at most maxIdle engines of each kind are kept; extra ones are dropped
+    public EnginePool(int maxIdle) {
+        this.interpreters = new ArrayBlockingQueue<>(Math.max(1, maxIdle));
+        this.vms = new ArrayBlockingQueue<>(Math.max(1, maxIdle));
+    }
+
+    public static EnginePool shared() {
+        return SHARED;
+    }
+
+    public void run(Program program, boolean useVm, Budget budget, Appendable out) {
+        ArrayBlockingQueue<Engine> idle = useVm ? vms : interpreters;
+
+        Engine engine = idle.poll();
+        if (engine == null) {
+            engine = useVm ? new VM(out, budget) : new Interpreter(out, budget);
+        } else {
+            engine.reset(out, budget);
+        }
+
+        try {
+            engine.interpret(program);
+        } finally {
+            engine.reset(Writer.nullWriter(), Budget.unlimited());
+            idle.offer(engine);
+        }
+    }
+}
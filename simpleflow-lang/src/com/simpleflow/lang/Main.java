@@ -0,0 +1,285 @@
+package com.simpleflow.lang;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Scanner;
+
+import com.simpleflow.lang.ast.Stmt;
+import com.simpleflow.lang.interpreter.BoundedOutput;
+import com.simpleflow.lang.interpreter.Budget;
+import com.simpleflow.lang.interpreter.Interpreter;
+import com.simpleflow.lang.interpreter.Program;
+import com.simpleflow.lang.lexer.Lexer;
+import com.simpleflow.lang.optimizer.Optimizer;
+import com.simpleflow.lang.parser.ParseError;
+import com.simpleflow.lang.parser.Parser;
+
+public class Main {
+
+    // ======================
+    // CLI ENTRY POINT
+    // ======================
+    // The tree-walking interpreter spends Java frames on every script call,
+    // so the CLI runs on a thread with room for Budget.DEFAULT_MAX_DEPTH of them.
+    private static final long STACK_SIZE = 512L << 20;
+
+    public static void main(String[] args) throws Exception {
+        Exception[] failure = new Exception[1];
+        Thread thread = new Thread(null, () -> {
+            try {
+                start(args);
+            } catch (Exception e) {
+                failure[0] = e;
+            }
+        }, "simpleflow-main", STACK_SIZE);
+        thread.start();
+        thread.join();
+
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+    }
+
+    private static void start(String[] args) throws Exception {
+
+        if (args.length == 0) {
+            repl();
+            return;
+        }
+
+        if (args[0].equals("--serve")) {
+            serve(args.length > 1 && args[1].equals("--vm"));
+            return;
+        }
+
+        if (args[0].equals("--stream") && args.length == 2) {
+            stream(Files.readString(Path.of(args[1])));
+            return;
+        }
+
+        boolean useVm = args[0].equals("--vm");
+        if (args.length != (useVm ? 2 : 1)) {
+            System.out.println("Usage: java Main [--vm | --stream] <file.sf>");
+            System.out.println("       java Main --serve [--vm]");
+            return;
+        }
+
+        String source = Files.readString(Path.of(args[args.length - 1]));
+
+        String output = run(source, useVm);
+
+        if (!output.isEmpty()) {
+            System.out.println(output);
+        }
+    }
+
+    // Tree-walker only: each top-level statement runs as soon as it is parsed
+    // and its output is printed right away, which suits very large scripts.
+    private static void stream(String source) {
+        Interpreter interpreter = new Interpreter(System.out);
+        try {
+            interpreter.interpretStreaming(new Parser(new Lexer(source)));
+        } catch (ParseError e) {
+            System.out.println(formatParseError(source, e));
+        } catch (RuntimeException e) {
+            System.out.println("Runtime error: " + e.getMessage());
+        }
+        System.out.flush();
+    }
+
+    // ======================
+    // REUSABLE ENGINE API
+    // ======================
+    public static String run(String source) {
+        return run(source, false);
+    }
+
+    // useVm selects the bytecode VM instead of the tree-walking interpreter
+    public static String run(String source, boolean useVm) {
+        return run(source, useVm, Budget.unlimited());
+    }
+
+    public static String run(String source, boolean useVm, Budget budget) {
+        return run(source, useVm, budget, 0);
+    }
+
+    public static String run(String source, boolean useVm, Budget budget, long maxOutputBytes) {
+        Program program;
+        try {
+            program = compile(source);
+        } catch (ParseError e) {
+            return formatParseError(source, e);
+        } catch (RuntimeException e) {
+            return "Runtime error: " + e.getMessage();
+        }
+
+        return run(program, useVm, budget, maxOutputBytes);
+    }
+
+    // Lexes, parses and resolves once; the result can be run many times.
+    public static Program compile(String source) {
+        try {
+            Lexer lexer = new Lexer(source);
+            Parser parser = new Parser(lexer);
+            List<Stmt> statements = new Optimizer().optimize(parser.parse());
+            return Program.resolve(statements);
+        } catch (StackOverflowError e) {
+            // the parser and resolver recurse once per level of nesting
+            throw new RuntimeException("Program is nested too deeply.");
+        }
+    }
+
+    public static String run(Program program, boolean useVm) {
+        return run(program, useVm, Budget.unlimited());
+    }
+
+    // Stops the program with a runtime error once 'budget' runs out.
+    public static String run(Program program, boolean useVm, Budget budget) {
+        return run(program, useVm, budget, 0);
+    }
+
+    // Keeps at most maxOutputBytes of output (0 = no limit), see BoundedOutput.
+    public static String run(Program program, boolean useVm, Budget budget, long maxOutputBytes) {
+        StringBuilder buffer = new StringBuilder();
+        try {
+            run(program, useVm, budget, new BoundedOutput(buffer, maxOutputBytes));
+        } catch (RuntimeException e) {
+            return "Runtime error: " + e.getMessage();
+        }
+
+        return buffer
+                .toString()
+                .replace("\r\n", "\n")
+                .trim();
+    }
+
+    // Writes show/print output to 'out' as the program produces it. A
+    // runtime error is thrown after whatever output came before it.
+    public static void run(Program program, boolean useVm, Budget budget, Appendable out) {
+        EnginePool.shared().run(program, useVm, budget, out);
+    }
+
+    public static String formatParseError(String source, ParseError e) {
+        String[] lines = source.split("\n", -1);
+        String lineText = "";
+        if (e.line > 0 && e.line <= lines.length) {
+            lineText = lines[e.line - 1];
+        }
+        String caret = " ".repeat(Math.max(0, e.column - 1)) + "^";
+        return "Parse error at line " + e.line +
+               ", column " + e.column +
+               ": " + e.getMessage() + "\n" +
+               lineText + "\n" +
+               caret;
+    }
+
+    // ======================
+    // WORKER MODE
+    // ======================
+    // Runs programs sent over stdin one after another, so a caller can keep
+    // this JVM warm instead of starting a new one per program.
+    //   request:  int32 timeout in ms (0 = none), int32 length, UTF-8 source
+    //   response: int32 length, UTF-8 output,
+    //             int32 length, UTF-8 stderr (lexer warnings) of that run
+    // Integers are big-endian. The worker exits at end of input.
+    private static final long SERVE_MAX_OUTPUT_BYTES = 1 << 20;
+
+    private static void serve(boolean useVm) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(System.in));
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)));
+
+        // programs must not read or write the protocol streams; anything
+        // written to System.out or System.err goes back with the run's reply
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        PrintStream errorStream = new PrintStream(errors, true, StandardCharsets.UTF_8);
+        System.setIn(InputStream.nullInputStream());
+        System.setOut(errorStream);
+        System.setErr(errorStream);
+
+        while (true) {
+            int timeoutMs;
+            try {
+                timeoutMs = in.readInt();
+            } catch (EOFException e) {
+                return;
+            }
+            byte[] source = new byte[in.readInt()];
+            in.readFully(source);
+            errors.reset();
+
+            String output = run(new String(source, StandardCharsets.UTF_8), useVm,
+                    new Budget(0, timeoutMs), SERVE_MAX_OUTPUT_BYTES);
+
+            byte[] bytes = output.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+            int errorLength = (int) Math.min(errors.size(), SERVE_MAX_OUTPUT_BYTES);
+            out.writeInt(errorLength);
+            out.write(errors.toByteArray(), 0, errorLength);
+            out.flush();
+        }
+    }
+
+    private static void repl() {
+        Scanner scanner = new Scanner(System.in);
+        Interpreter interpreter = new Interpreter();
+        StringBuilder buffer = new StringBuilder();
+        int braceDepth = 0;
+
+        while (true) {
+            System.out.print(braceDepth > 0 ? "... " : "sf> ");
+            if (!scanner.hasNextLine()) {
+                break;
+            }
+            String line = scanner.nextLine();
+            if (line.trim().equals("exit")) {
+                break;
+            }
+
+            buffer.append(line).append("\n");
+            braceDepth += countBraces(line);
+
+            if (braceDepth > 0) {
+                continue;
+            }
+
+            String source = buffer.toString();
+            buffer.setLength(0);
+
+            try {
+                Lexer lexer = new Lexer(source);
+                Parser parser = new Parser(lexer);
+                List<Stmt> statements = new Optimizer().optimize(parser.parse());
+                interpreter.interpret(statements);
+            } catch (ParseError e) {
+                System.out.println(formatParseError(source, e));
+            } catch (RuntimeException e) {
+                System.out.println("Runtime error: " + e.getMessage());
+            }
+        }
+    }
+
+    private static int countBraces(String line) {
+        int count = 0;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '{') count++;
+            if (c == '}') count--;
+        }
+        return count;
+    }
+}
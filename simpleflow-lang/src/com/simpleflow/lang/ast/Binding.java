@@ -0,0 +1,18 @@
+package com.simpleflow.lang.ast;
+
+public final class Binding {
+
+    // Local candidates, innermost first: hops up the environment chain and
+    // the slot in that environment. The first one that is defined wins.
+    public final int[] depths;
+    public final int[] slots;
+
+    // Slot in the global environment, used when no local candidate is defined.
+    public final int global;
+
+    public Binding(int[] depths, int[] slots, int global) {
+        this.depths = depths;
+        this.slots = slots;
+        this.global = global;
+    }
+}
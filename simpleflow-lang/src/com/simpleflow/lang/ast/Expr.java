@@ -27,6 +27,10 @@ public abstract class Expr {
         public final Token operator;
         public final Expr right;
 
+        // set once the operands were not both ints; the interpreter then
+        // stops trying its unboxed path for this node
+        public boolean generic;
+
         public Binary(Expr left, Token operator, Expr right) {
             this.left = left;
             this.operator = operator;
@@ -131,6 +135,11 @@ public abstract class Expr {
 
     public static class Variable extends Expr {
         public final Token name;
+        public Binding binding;
+
+        // the shared builtin this name can only ever mean, or null; set by
+        // the resolver for whole programs
+        public Object builtin;
 
         public Variable(Token name) {
             this.name = name;
@@ -147,6 +156,12 @@ public abstract class Expr {
         public final Token paren;
         public final List<Expr> arguments;
 
+        // Inline cache: what the last callee checked here was, a function's
+        // declaration or a builtin. Both are shared by every engine, so the
+        // cache holds on to no run's data, and closures made from the same
+        // declaration all hit it.
+        public Object checked;
+
         public Call(Expr callee, Token paren, List<Expr> arguments) {
             this.callee = callee;
             this.paren = paren;
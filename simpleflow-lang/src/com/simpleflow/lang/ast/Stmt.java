@@ -53,6 +53,13 @@ public abstract class Stmt {
     public static class Put extends Stmt {
         public final Token name;
         public final Expr initializer;
+        public int slot;
+
+        // In a block of a function body that is not in a loop of that function.
+        // When the call was made from a loop, such blocks share the function's
+        // environment, and the value goes to this slot 'sharedDepth' up instead.
+        public int sharedDepth = -1;
+        public int sharedSlot;
 
         public Put(Token name, Expr initializer) {
             this.name = name;
@@ -106,6 +113,7 @@ public abstract class Stmt {
 
     public static class Block extends Stmt {
         public final List<Stmt> statements;
+        public int scopeSize = -1; // -1: runs in the enclosing environment
 
         public Block(List<Stmt> statements) {
             this.statements = statements;
@@ -153,6 +161,14 @@ public abstract class Stmt {
         public final Token name;
         public final List<Token> params;
         public final List<Stmt> body;
+        public int slot;
+        public int sharedDepth = -1; // see Put.sharedDepth
+        public int sharedSlot;
+        public int frameSize;
+
+        // false when the body never touches an enclosing function's or
+        // block's locals; the closure then keeps only the globals alive
+        public boolean captures;
 
         public Function(Token name, List<Token> params, List<Stmt> body) {
             this.name = name;
@@ -170,6 +186,10 @@ public abstract class Stmt {
         public final Token keyword;
         public final Expr value;
 
+        // inside a loop of its own function; 'return f()' is then no tail
+        // call, since a 'leave' in f has to reach that loop
+        public boolean inLoop;
+
         public Return(Token keyword, Expr value) {
             this.keyword = keyword;
             this.value = value;
@@ -184,6 +204,7 @@ public abstract class Stmt {
     public static class Assign extends Stmt {
     public final Token name;
     public final Expr value;
+    public Binding binding;
 
     public Assign(Token name, Expr value) {
         this.name = name;
@@ -216,6 +237,7 @@ public abstract class Stmt {
     public static class IncDec extends Stmt {
         public final Token name;
         public final Token operator;
+        public Binding binding;
 
         public IncDec(Token name, Token operator) {
             this.name = name;
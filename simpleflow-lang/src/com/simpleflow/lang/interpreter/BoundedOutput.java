@@ -0,0 +1,78 @@
+package com.simpleflow.lang.interpreter;
+
+import java.io.IOException;
+
+// Passes at most maxBytes of (UTF-8) program output on to 'sink'. The write
+// that crosses the limit is cut short and followed by a marker, and later
+// writes are dropped, so a runaway 'show' loop costs time but not memory.
+public final class BoundedOutput implements Appendable {
+
+    private final Appendable sink;
+    private final long maxBytes;
+    private long bytes = 0;
+    private boolean truncated = false;
+
+    // maxBytes <= 0 means no limit
+    public BoundedOutput(Appendable sink, long maxBytes) {
+        this.sink = sink;
+        this.maxBytes = maxBytes > 0 ? maxBytes : Long.MAX_VALUE;
+    }
+
+    public boolean truncated() {
+        return truncated;
+    }
+
+    @Override
+    public Appendable append(CharSequence text) throws IOException {
+        return append(text, 0, text.length());
+    }
+
+    @Override
+    public Appendable append(char c) throws IOException {
+        return append(String.valueOf(c), 0, 1);
+    }
+
+    @Override
+    public Appendable append(CharSequence text, int start, int end) throws IOException {
+        if (truncated) {
+            return this;
+        }
+        if (maxBytes == Long.MAX_VALUE) {
+            sink.append(text, start, end);
+            return this;
+        }
+
+        int i = start;
+        while (i < end) {
+            int size = utf8Length(text.charAt(i));
+            if (bytes + size > maxBytes) {
+                break;
+            }
+            bytes += size;
+            i++;
+        }
+        if (i < end && i > start && Character.isHighSurrogate(text.charAt(i - 1))) {
+            i--; // keep surrogate pairs whole
+            bytes -= 2;
+        }
+
+        sink.append(text, start, i);
+
+        if (i < end) {
+            truncated = true;
+            sink.append("\n[output truncated after " + bytes + " bytes]");
+        }
+        return this;
+    }
+
+    // a surrogate pair is 4 bytes, 2 for each half
+    private static int utf8Length(char c) {
+        if (c < 0x80) {
+            return 1;
+        }
+        if (c < 0x800 || Character.isSurrogate(c)) {
+            return 2;
+        }
+        return 3;
+    }
+}
@@ -0,0 +1,121 @@
+package com.simpleflow.lang.interpreter;
+
+import java.util.function.LongSupplier;
+
+// How much work one run may do. Both engines call step() on every loop
+// iteration and every user function call; the clock and the thread's
+// interrupt flag are only looked at every CHECK_INTERVAL steps. maxDepth
+// bounds how many calls may be nested at once, and maxBytes how much memory
+// the run may hold (see allocate()).
+// A budget belongs to a single run and is not thread-safe.
+public final class Budget {
+
+    private static final int CHECK_INTERVAL = 1024;
+    public static final int DEFAULT_MAX_DEPTH = 100_000;
+
+    private final long maxSteps;
+    private final int maxDepth;
+    private final long maxBytes;
+    private final long deadline; // System.nanoTime() value, or 0 for none
+    private long steps = 0;
+    private int untilCheck = CHECK_INTERVAL;
+    private long allocated = 0;
+
+    // what the run can still reach, see allocate(); null counts nothing
+    private LongSupplier live;
+
+    // maxSteps <= 0 or timeoutMillis <= 0 switch that limit off
+    public Budget(long maxSteps, long timeoutMillis) {
+        this(maxSteps, timeoutMillis, 0);
+    }
+
+    // maxDepth <= 0 means DEFAULT_MAX_DEPTH
+    public Budget(long maxSteps, long timeoutMillis, int maxDepth) {
+        this(maxSteps, timeoutMillis, maxDepth, 0);
+    }
+
+    // maxBytes <= 0 switches the memory limit off
+    public Budget(long maxSteps, long timeoutMillis, int maxDepth, long maxBytes) {
+        this.maxSteps = maxSteps > 0 ? maxSteps : Long.MAX_VALUE;
+        this.maxDepth = maxDepth > 0 ? maxDepth : DEFAULT_MAX_DEPTH;
+        this.maxBytes = maxBytes > 0 ? maxBytes : Long.MAX_VALUE;
+        this.deadline = timeoutMillis > 0 ? System.nanoTime() + timeoutMillis * 1_000_000L : 0;
+    }
+
+    // No step or time limit, but still stops when the thread is interrupted.
+    public static Budget unlimited() {
+        return new Budget(0, 0);
+    }
+
+    public void step() {
+        if (++steps > maxSteps) {
+            throw new Exceeded("Step limit exceeded", maxSteps);
+        }
+        if (--untilCheck == 0) {
+            untilCheck = CHECK_INTERVAL;
+            check();
+        }
+    }
+
+    // Charges an approximate allocation to the run. Cells and strings are
+    // charged when they are made or grown, and call frames are given back
+    // with release() when they return. Nothing tells the engines when a cell
+    // or string becomes garbage, so once the charges pass the limit they are
+    // replaced by what the engine's 'live' count can still reach, and the run
+    // only stops if that is over the limit too. A run that keeps allocating
+    // while it holds nearly all of its limit is counted often, and will
+    // usually run out of time first.
+    public void allocate(long bytes) {
+        allocated += bytes;
+        if (allocated <= maxBytes) {
+            return;
+        }
+        if (live != null) {
+            // 'bytes' is for something not stored anywhere yet
+            allocated = live.getAsLong() + bytes;
+        }
+        if (allocated > maxBytes) {
+            throw new Exceeded("Memory limit of " + maxBytes + " bytes exceeded", steps);
+        }
+    }
+
+    public void release(long bytes) {
+        allocated -= bytes;
+    }
+
+    // Set by the engine running with this budget.
+    public void countLiveWith(LongSupplier live) {
+        this.live = live;
+    }
+
+    public long allocated() {
+        return allocated;
+    }
+
+    public int maxDepth() {
+        return maxDepth;
+    }
+
+    public long steps() {
+        return Math.min(steps, maxSteps);
+    }
+
+    private void check() {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new Exceeded("Execution interrupted", steps);
+        }
+        if (deadline != 0 && System.nanoTime() - deadline > 0) {
+            throw new Exceeded("Time limit exceeded", steps);
+        }
+    }
+
+    // Stops the run wherever it is. Reported like any other runtime error.
+    public static class Exceeded extends RuntimeException {
+        public final long steps;
+
+        Exceeded(String reason, long steps) {
+            super(reason + " after " + steps + " steps.", null, false, false);
+            this.steps = steps;
+        }
+    }
+}
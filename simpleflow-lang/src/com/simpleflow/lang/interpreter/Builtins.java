@@ -0,0 +1,343 @@
+package com.simpleflow.lang.interpreter;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+
+// The builtin functions, created once and shared by every interpreter and VM
+// on every thread. None of them holds state of its own; input() and random()
+// keep theirs in the Execution they are called with.
+public final class Builtins {
+
+    private static final Map<String, Callable> ALL = create();
+
+    private Builtins() {
+    }
+
+    // in slot order: every engine numbers these as its first globals
+    public static Map<String, Callable> all() {
+        return ALL;
+    }
+
+    private static Map<String, Callable> create() {
+        Map<String, Callable> builtins = new LinkedHashMap<>();
+        builtins.put("length", new LengthFunction());
+        builtins.put("input", new InputFunction());
+        builtins.put("random", new RandomFunction());
+        builtins.put("clock", new ClockFunction());
+        builtins.put("type", new TypeFunction());
+        builtins.put("toNumber", new ToNumberFunction());
+        builtins.put("toString", new ToStringFunction());
+        builtins.put("push", new PushFunction());
+        builtins.put("pop", new PopFunction());
+        builtins.put("shift", new ShiftFunction());
+        builtins.put("unshift", new UnshiftFunction());
+        builtins.put("keys", new KeysFunction());
+        builtins.put("values", new ValuesFunction());
+        builtins.put("has", new HasFunction());
+        builtins.put("slice", new SliceFunction());
+        builtins.put("merge", new MergeFunction());
+        builtins.put("assert", new AssertFunction());
+        return Collections.unmodifiableMap(builtins);
+    }
+
+    private static class LengthFunction implements Callable {
+        @Override
+        public int arity() {
+            return 1;
+        }
+
+        @Override
+        public Object call(Execution execution, List<Object> arguments) {
+            Object value = arguments.get(0);
+            if (value instanceof Cell cell) {
+                return cell.length();
+            }
+            throw new RuntimeException("length() expects a cell.");
+        }
+    }
+
+    private static class InputFunction implements Callable {
+        @Override
+        public int arity() {
+            return 0;
+        }
+
+        @Override
+        public Object call(Execution execution, List<Object> arguments) {
+            try {
+                Scanner scanner = execution.input();
+                if (scanner.hasNextLine()) {
+                    return scanner.nextLine();
+                }
+            } catch (Exception ignored) {
+            }
+            return "";
+        }
+    }
+
+    private static class RandomFunction implements Callable {
+        @Override
+        public int arity() {
+            return 2;
+        }
+
+        @Override
+        public Object call(Execution execution, List<Object> arguments) {
+            Object a = arguments.get(0);
+            Object b = arguments.get(1);
+            if (!(a instanceof Integer) || !(b instanceof Integer)) {
+                throw new RuntimeException("random(min, max) expects numbers.");
+            }
+            int min = (Integer) a;
+            int max = (Integer) b;
+            if (max < min) {
+                int tmp = min;
+                min = max;
+                max = tmp;
+            }
+            return min + execution.random().nextInt(max - min + 1);
+        }
+    }
+
+    private static class ClockFunction implements Callable {
+        @Override
+        public int arity() {
+            return 0;
+        }
+
+        @Override
+        public Object call(Execution execution, List<Object> arguments) {
+            return (int) (System.currentTimeMillis() / 1000);
+        }
+    }
+
+    private static class TypeFunction implements Callable {
+        @Override
+        public int arity() {
+            return 1;
+        }
+
+        @Override
+        public Object call(Execution execution, List<Object> arguments) {
+            Object value = arguments.get(0);
+            if (value == null)
+                return "null";
+            if (value instanceof Integer)
+                return "number";
+            if (value instanceof String || value instanceof Rope)
+                return "string";
+            if (value instanceof Boolean)
+                return "boolean";
+            if (value instanceof Cell)
+                return "cell";
+            if (value instanceof Callable)
+                return "function";
+            return "unknown";
+        }
+    }
+
+    private static class ToNumberFunction implements Callable {
+        @Override
+        public int arity() {
+            return 1;
+        }
+
+        @Override
+        public Object call(Execution execution, List<Object> arguments) {
+            Object value = Values.flat(arguments.get(0));
+            if (value instanceof Integer)
+                return value;
+            if (value instanceof Boolean b)
+                return b ? 1 : 0;
+            if (value instanceof String s) {
+                try {
+                    return Integer.parseInt(s.trim());
+                } catch (NumberFormatException e) {
+                    throw new RuntimeException("toNumber() invalid string.");
+                }
+            }
+            throw new RuntimeException("toNumber() expects number/string/bool.");
+        }
+    }
+
+    private static class ToStringFunction implements Callable {
+        @Override
+        public int arity() {
+            return 1;
+        }
+
+        @Override
+        public Object call(Execution execution, List<Object> arguments) {
+            return Values.stringify(arguments.get(0));
+        }
+    }
+
+    private static class PushFunction implements Callable {
+        @Override
+        public int arity() {
+            return 2;
+        }
+
+        @Override
+        public Object call(Execution execution, List<Object> arguments) {
+            Object target = arguments.get(0);
+            if (!(target instanceof Cell cell)) {
+                throw new RuntimeException("push() expects a cell.");
+            }
+            cell.push(arguments.get(1));
+            return cell;
+        }
+    }
+
+    private static class PopFunction implements Callable {
+        @Override
+        public int arity() {
+            return 1;
+        }
+
+        @Override
+        public Object call(Execution execution, List<Object> arguments) {
+            Object target = arguments.get(0);
+            if (!(target instanceof Cell cell)) {
+                throw new RuntimeException("pop() expects a cell.");
+            }
+            return cell.pop();
+        }
+    }
+
+    private static class ShiftFunction implements Callable {
+        @Override
+        public int arity() {
+            return 1;
+        }
+
+        @Override
+        public Object call(Execution execution, List<Object> arguments) {
+            Object target = arguments.get(0);
+            if (!(target instanceof Cell cell)) {
+                throw new RuntimeException("shift() expects a cell.");
+            }
+            return cell.shift();
+        }
+    }
+
+    private static class UnshiftFunction implements Callable {
+        @Override
+        public int arity() {
+            return 2;
+        }
+
+        @Override
+        public Object call(Execution execution, List<Object> arguments) {
+            Object target = arguments.get(0);
+            if (!(target instanceof Cell cell)) {
+                throw new RuntimeException("unshift() expects a cell.");
+            }
+            cell.unshift(arguments.get(1));
+            return cell;
+        }
+    }
+
+    private static class KeysFunction implements Callable {
+        @Override
+        public int arity() {
+            return 1;
+        }
+
+        @Override
+        public Object call(Execution execution, List<Object> arguments) {
+            Object target = arguments.get(0);
+            if (!(target instanceof Cell cell)) {
+                throw new RuntimeException("keys() expects a cell.");
+            }
+            return cell.keys();
+        }
+    }
+
+    private static class ValuesFunction implements Callable {
+        @Override
+        public int arity() {
+            return 1;
+        }
+
+        @Override
+        public Object call(Execution execution, List<Object> arguments) {
+            Object target = arguments.get(0);
+            if (!(target instanceof Cell cell)) {
+                throw new RuntimeException("values() expects a cell.");
+            }
+            return cell.values();
+        }
+    }
+
+    private static class HasFunction implements Callable {
+        @Override
+        public int arity() {
+            return 2;
+        }
+
+        @Override
+        public Object call(Execution execution, List<Object> arguments) {
+            Object target = arguments.get(0);
+            if (!(target instanceof Cell cell)) {
+                throw new RuntimeException("has() expects a cell.");
+            }
+            return cell.has(arguments.get(1));
+        }
+    }
+
+    private static class SliceFunction implements Callable {
+        @Override
+        public int arity() {
+            return 3;
+        }
+
+        @Override
+        public Object call(Execution execution, List<Object> arguments) {
+            Object target = arguments.get(0);
+            if (!(target instanceof Cell cell)) {
+                throw new RuntimeException("slice() expects a cell.");
+            }
+            if (!(arguments.get(1) instanceof Integer start) ||
+                    !(arguments.get(2) instanceof Integer end)) {
+                throw new RuntimeException("slice() expects start/end numbers.");
+            }
+            return cell.slice(start, end);
+        }
+    }
+
+    private static class MergeFunction implements Callable {
+        @Override
+        public int arity() {
+            return 2;
+        }
+
+        @Override
+        public Object call(Execution execution, List<Object> arguments) {
+            if (!(arguments.get(0) instanceof Cell a) || !(arguments.get(1) instanceof Cell b)) {
+                throw new RuntimeException("merge() expects two cells.");
+            }
+            return a.merge(b);
+        }
+    }
+
+    private static class AssertFunction implements Callable {
+        @Override
+        public int arity() {
+            return 2;
+        }
+
+        @Override
+        public Object call(Execution execution, List<Object> arguments) {
+            Object condition = arguments.get(0);
+            Object message = arguments.get(1);
+            if (!Values.isTruthy(condition)) {
+                throw new RuntimeException("assert failed: " + Values.stringify(message));
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.simpleflow.lang.interpreter;
+
+import java.util.List;
+
+public interface Callable {
+    int arity();
+
+    // builtins keep per-run state in 'execution'; user functions ignore it
+    Object call(Execution execution, List<Object> arguments);
+
+    // the environment a user function closes over, which it keeps alive;
+    // null for builtins (see Footprint)
+    default Environment closure() {
+        return null;
+    }
+}
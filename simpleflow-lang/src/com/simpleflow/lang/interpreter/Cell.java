@@ -1,33 +1,108 @@
 package com.simpleflow.lang.interpreter;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 public class Cell {
-    private final List<Object> list = new ArrayList<>();
-    private final Map<Object, Object> map = new HashMap<>();
+    private static final int[] EMPTY_INTS = {};
+    private static final int MIN_CAPACITY = 4;
+    private static final int SMALL_MAP = 8;
+
+    // rough sizes charged to the budget: a Cell itself, and one map entry
+    private static final int CELL_BYTES = 56;
+    private static final int ENTRY_BYTES = 32;
+
+    // Array part: a ring buffer, so push/pop/shift/unshift are all O(1).
+    // Element i (0-based) lives at slot (head + i) & (capacity - 1); the
+    // capacity is a power of two and unused slots are always 0 or null.
+    //
+    // While every element is an int they are kept unboxed in 'ints' and
+    // 'items' is null. The first non-int write moves them to 'items' for
+    // good and sets 'ints' to null.
+    private int[] ints = EMPTY_INTS;
+    private Object[] items;
+    private int head = 0;
+    private int size = 0;
+
+    // slice() and merge() share arrays instead of copying them. A shared
+    // array is never written: the first write through either cell copies
+    // the live elements first. Slots outside a shared window may hold
+    // anything, since the copy only takes the live range.
+    private boolean shared = false;
+
+    // the last Footprint count that reached this cell; fits in padding
+    private short counted = 0;
+
+    // After merge() the array part is these two read-only parts, one after
+    // the other, until the first write flattens them. 'ints' and 'items'
+    // are both null meanwhile.
+    private Cell left;
+    private Cell right;
+
+    // Map part, only created on the first non-integer key. Up to SMALL_MAP
+    // entries sit in 'pairs' (key, value, key, value, ...) in insertion order
+    // and are found by a linear scan; past that they move into 'map'.
+    private Object[] pairs;
+    private int pairCount = 0;
+    private HashMap<Object, Object> map;
+
+    // Every allocation of this cell, and of cells made from it, is charged
+    // here. null for cells made outside a run.
+    private final Budget budget;
 
     public Cell(List<Object> initial) {
-        if (initial != null) {
-            list.addAll(initial);
+        this(initial, null);
+    }
+
+    public Cell(List<Object> initial, Budget budget) {
+        this.budget = budget;
+        charge(CELL_BYTES);
+        if (initial == null || initial.isEmpty()) {
+            return;
+        }
+
+        int capacity = capacityFor(initial.size());
+        charge(arrayBytes(capacity));
+        if (allInts(initial)) {
+            ints = new int[capacity];
+            for (Object value : initial) {
+                ints[size++] = (Integer) value;
+            }
+        } else {
+            ints = null;
+            items = new Object[capacity];
+            for (Object value : initial) {
+                items[size++] = value;
+            }
         }
     }
 
+    private Cell(int[] ints, Object[] items, int size, Budget budget) {
+        this.ints = ints;
+        this.items = items;
+        this.size = size;
+        this.budget = budget;
+        charge(CELL_BYTES);
+    }
+
     public Object get(Object index) {
         if (index instanceof Integer i) {
             int idx = i;
             if (idx <= 0) {
                 throw new RuntimeException("Cell index must be >= 1.");
             }
-            if (idx <= list.size()) {
-                return list.get(idx - 1);
+            if (idx <= size) {
+                return at(idx - 1);
             }
             return null;
         }
 
-        return map.get(index);
+        return mapGet(Values.flat(index));
     }
 
     public void set(Object index, Object value) {
@@ -36,91 +111,476 @@ public class Cell {
             if (idx <= 0) {
                 throw new RuntimeException("Cell index must be >= 1.");
             }
-            while (list.size() < idx - 1) {
-                list.add(null);
+            own();
+            if (idx > size + 1 && ints != null) {
+                deoptimize(); // the gap up to idx is filled with null
             }
-            if (idx - 1 < list.size()) {
-                list.set(idx - 1, value);
-            } else {
-                list.add(value);
+            if (idx > size) {
+                ensureCapacity(idx);
+                size = idx;
             }
+            put(idx - 1, value);
             return;
         }
 
-        map.put(index, value);
+        mapPut(Values.flat(index), value);
     }
 
     public int length() {
-        return list.size();
+        return size;
+    }
+
+    // True while every element of the array part is an int, see intAt().
+    // A merged cell answers for its two parts without flattening them.
+    public boolean holdsInts() {
+        if (left != null) {
+            return left.ints != null && right.ints != null;
+        }
+        return ints != null;
+    }
+
+    // The element at 1-based 'index', unboxed. Only valid while holdsInts()
+    // and 1 <= index <= length().
+    public int intAt(int index) {
+        if (left != null) {
+            return index <= left.size ? left.intAt(index) : right.intAt(index - left.size);
+        }
+        return ints[slot(index - 1)];
     }
 
     public void push(Object value) {
-        list.add(value);
+        own();
+        ensureCapacity(size + 1);
+        size++;
+        put(size - 1, value);
     }
 
+    // On a shared array pop and shift only move this cell's window.
     public Object pop() {
-        if (list.isEmpty()) return null;
-        return list.remove(list.size() - 1);
+        if (size == 0) return null;
+        flatten();
+        Object value = at(size - 1);
+        if (!shared) {
+            clear(size - 1);
+        }
+        size--;
+        return value;
     }
 
     public Object shift() {
-        if (list.isEmpty()) return null;
-        return list.remove(0);
+        if (size == 0) return null;
+        flatten();
+        Object value = at(0);
+        if (!shared) {
+            clear(0);
+        }
+        head = (head + 1) & (capacity() - 1);
+        size--;
+        return value;
     }
 
     public void unshift(Object value) {
-        list.add(0, value);
+        own();
+        ensureCapacity(size + 1);
+        head = (head - 1) & (capacity() - 1);
+        size++;
+        put(0, value);
     }
 
     public boolean has(Object key) {
+        key = Values.flat(key);
         if (key instanceof Integer i) {
-            return i > 0 && i <= list.size();
+            return i > 0 && i <= size;
         }
-        return map.containsKey(key);
+        if (map != null) {
+            return map.containsKey(key);
+        }
+        return indexOfKey(key) >= 0;
     }
 
     public Cell keys() {
-        return new Cell(new ArrayList<>(map.keySet()));
+        return new Cell(new ArrayList<>(hashMap().keySet()), budget);
     }
 
     public Cell values() {
-        return new Cell(new ArrayList<>(map.values()));
+        return new Cell(new ArrayList<>(hashMap().values()), budget);
     }
 
+    // O(1): the slice is a window onto this cell's array.
     public Cell slice(int start, int end) {
         int s = Math.max(1, start);
-        int e = Math.min(end, list.size());
-        List<Object> out = new ArrayList<>();
-        for (int i = s; i <= e; i++) {
-            out.add(list.get(i - 1));
+        int e = Math.min(end, size);
+        if (s > e) {
+            return new Cell(EMPTY_INTS, null, 0, budget);
         }
-        return new Cell(out);
+
+        Cell slice = share();
+        slice.head = slot(s - 1);
+        slice.size = e - s + 1;
+        return slice;
     }
 
+    // O(1) for the array part: the result reads through to both arrays.
     public Cell merge(Cell other) {
-        List<Object> mergedList = new ArrayList<>(this.list);
-        mergedList.addAll(other.list);
-        Cell merged = new Cell(mergedList);
-        merged.map.putAll(this.map);
-        merged.map.putAll(other.map);
+        Cell merged;
+        if (other.size == 0) {
+            merged = this.share();
+        } else if (this.size == 0) {
+            merged = other.share();
+        } else {
+            merged = new Cell(null, null, this.size + other.size, budget);
+            merged.left = this.share();
+            merged.right = other.share();
+        }
+
+        if (this.hasMapPart() || other.hasMapPart()) {
+            // putAll presizes the table, which decides keys() order, so the
+            // merged map is always a real HashMap built this exact way
+            merged.map = new HashMap<>();
+            merged.map.putAll(this.hashMap());
+            merged.map.putAll(other.hashMap());
+            charge((long) ENTRY_BYTES * merged.map.size());
+        }
         return merged;
     }
 
+    // A read-only view of the array part as it is now; O(1) like slice().
     public List<Object> listSnapshot() {
-        return new ArrayList<>(list);
+        Cell snapshot = share();
+        return new AbstractList<>() {
+            @Override
+            public Object get(int index) {
+                return snapshot.at(Objects.checkIndex(index, snapshot.size));
+            }
+
+            @Override
+            public int size() {
+                return snapshot.size;
+            }
+        };
     }
 
     public Map<Object, Object> mapSnapshot() {
-        return new HashMap<>(map);
+        return new HashMap<>(hashMap());
+    }
+
+    // ---- MAP PART ----
+
+    private Object mapGet(Object key) {
+        if (map != null) {
+            return map.get(key);
+        }
+        int i = indexOfKey(key);
+        return i >= 0 ? pairs[i + 1] : null;
+    }
+
+    private void mapPut(Object key, Object value) {
+        if (map != null) {
+            if (!map.containsKey(key)) {
+                charge(ENTRY_BYTES);
+            }
+            map.put(key, value);
+            return;
+        }
+
+        int i = indexOfKey(key);
+        if (i >= 0) {
+            pairs[i + 1] = value;
+            return;
+        }
+
+        charge(ENTRY_BYTES);
+        if (pairCount == SMALL_MAP) {
+            map = hashMap();
+            map.put(key, value);
+            pairs = null;
+            pairCount = 0;
+            return;
+        }
+
+        if (pairs == null) {
+            pairs = new Object[4];
+        } else if (pairCount * 2 == pairs.length) {
+            pairs = Arrays.copyOf(pairs, pairs.length * 2);
+        }
+        pairs[pairCount * 2] = key;
+        pairs[pairCount * 2 + 1] = value;
+        pairCount++;
+    }
+
+    private boolean hasMapPart() {
+        return pairCount > 0 || (map != null && !map.isEmpty());
+    }
+
+    private int indexOfKey(Object key) {
+        for (int i = 0; i < pairCount * 2; i += 2) {
+            if (Objects.equals(pairs[i], key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // The map part as a HashMap. Small parts are rebuilt in insertion order,
+    // so iteration order is what a HashMap holding them all along would give.
+    private HashMap<Object, Object> hashMap() {
+        if (map != null) {
+            return map;
+        }
+        HashMap<Object, Object> out = new HashMap<>();
+        for (int i = 0; i < pairCount * 2; i += 2) {
+            out.put(pairs[i], pairs[i + 1]);
+        }
+        return out;
+    }
+
+    // ---- COPY ON WRITE ----
+
+    // A new cell with the same array part, sharing this one's array. Its map part is empty.
+    private Cell share() {
+        flatten();
+        if (size == 0) {
+            return new Cell(EMPTY_INTS, null, 0, budget);
+        }
+        Cell copy = new Cell(ints, items, size, budget);
+        copy.head = head;
+        copy.shared = true;
+        shared = true;
+        return copy;
+    }
+
+    // Makes the array part this cell's own before it is written.
+    private void own() {
+        flatten();
+        if (!shared) {
+            return;
+        }
+
+        int capacity = capacityFor(size);
+        charge(arrayBytes(capacity));
+        if (ints != null) {
+            int[] copy = new int[capacity];
+            copyTo(0, copy, 0, size);
+            ints = copy;
+        } else {
+            Object[] copy = new Object[capacity];
+            copyTo(0, copy, 0, size);
+            items = copy;
+        }
+        head = 0;
+        shared = false;
+    }
+
+    // Turns a merged cell's two parts into one array of its own.
+    private void flatten() {
+        if (left == null) {
+            return;
+        }
+
+        int capacity = capacityFor(size);
+        charge(arrayBytes(capacity));
+        if (left.ints != null && right.ints != null) {
+            ints = new int[capacity];
+            left.copyTo(0, ints, 0, left.size);
+            right.copyTo(0, ints, left.size, right.size);
+        } else {
+            items = new Object[capacity];
+            left.copyTo(0, items, 0, left.size);
+            right.copyTo(0, items, left.size, right.size);
+        }
+        head = 0;
+        left = null;
+        right = null;
+    }
+
+    // ---- RING BUFFER ----
+
+    private int capacity() {
+        return ints != null ? ints.length : items.length;
+    }
+
+    private int slot(int index) {
+        return (head + index) & (capacity() - 1);
+    }
+
+    private Object at(int index) {
+        if (ints != null) {
+            return ints[slot(index)];
+        }
+        if (left != null) {
+            return index < left.size ? left.at(index) : right.at(index - left.size);
+        }
+        return items[slot(index)];
+    }
+
+    private void put(int index, Object value) {
+        if (ints != null) {
+            if (value instanceof Integer i) {
+                ints[slot(index)] = i;
+                return;
+            }
+            deoptimize();
+        }
+        items[slot(index)] = value;
+    }
+
+    private void clear(int index) {
+        if (ints != null) {
+            ints[slot(index)] = 0;
+        } else {
+            items[slot(index)] = null;
+        }
+    }
+
+    // Boxes every element into 'items', keeping each one in the same slot.
+    private void deoptimize() {
+        charge(arrayBytes(ints.length) + 16L * size); // plus the boxes
+        Object[] boxed = new Object[ints.length];
+        for (int i = 0; i < size; i++) {
+            int s = slot(i);
+            boxed[s] = ints[s];
+        }
+        items = boxed;
+        ints = null;
+    }
+
+    // Copies 'count' elements starting at 'from' into dest, in order. 'dest'
+    // is an int[] only when this cell holds ints.
+    private void copyTo(int from, Object dest, int destPos, int count) {
+        if (count == 0) {
+            return;
+        }
+
+        if (ints == null && dest instanceof Object[] out) {
+            copyRuns(items, from, out, destPos, count);
+        } else if (dest instanceof int[] out) {
+            copyRuns(ints, from, out, destPos, count);
+        } else {
+            Object[] out = (Object[]) dest;
+            for (int i = 0; i < count; i++) {
+                out[destPos + i] = ints[slot(from + i)];
+            }
+        }
+    }
+
+    // the live range wraps at most once, so it is at most two arraycopy runs
+    private void copyRuns(Object src, int from, Object dest, int destPos, int count) {
+        int start = slot(from);
+        int first = Math.min(count, capacity() - start);
+        System.arraycopy(src, start, dest, destPos, first);
+        System.arraycopy(src, 0, dest, destPos + first, count - first);
+    }
+
+    private void ensureCapacity(int needed) {
+        if (needed <= capacity()) {
+            return;
+        }
+
+        int capacity = capacityFor(needed);
+        charge(arrayBytes(capacity));
+        if (ints != null) {
+            int[] grown = new int[capacity];
+            copyTo(0, grown, 0, size);
+            ints = grown;
+        } else {
+            Object[] grown = new Object[capacity];
+            copyTo(0, grown, 0, size);
+            items = grown;
+        }
+        head = 0;
+    }
+
+    private static int capacityFor(int needed) {
+        if (needed <= MIN_CAPACITY) {
+            return MIN_CAPACITY;
+        }
+        int capacity = Integer.highestOneBit(needed - 1) << 1;
+        if (capacity <= 0) {
+            throw new RuntimeException("Cell is too large.");
+        }
+        return capacity;
+    }
+
+    private static boolean allInts(List<Object> values) {
+        for (Object value : values) {
+            if (!(value instanceof Integer)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // ---- ACCOUNTING ----
+
+    private void charge(long bytes) {
+        if (budget != null) {
+            budget.allocate(bytes);
+        }
+    }
+
+    // What this cell holds, sized as it was charged: itself, its array part
+    // (once, if other cells share it), boxes and map entries. The elements,
+    // keys, map values and merged parts go to 'count'.
+    long footprint(Footprint count) {
+        long bytes = CELL_BYTES;
+        if (left != null) {
+            count.add(left);
+            count.add(right);
+        } else if (ints != null) {
+            if (ints.length > 0 && (!shared || count.first(ints))) {
+                bytes += arrayBytes(ints.length);
+            }
+        } else if (items != null && (!shared || count.first(items))) {
+            bytes += arrayBytes(items.length);
+            for (Object item : items) {
+                if (item instanceof Integer) {
+                    bytes += 16;
+                } else {
+                    count.add(item);
+                }
+            }
+        }
+
+        if (map != null) {
+            bytes += (long) ENTRY_BYTES * map.size();
+            for (Map.Entry<Object, Object> entry : map.entrySet()) {
+                count.add(entry.getKey());
+                count.add(entry.getValue());
+            }
+        } else {
+            bytes += (long) ENTRY_BYTES * pairCount;
+            for (int i = 0; i < pairCount * 2; i++) {
+                count.add(pairs[i]);
+            }
+        }
+        return bytes;
+    }
+
+    // false if count 'mark' has already reached this cell
+    boolean mark(short mark) {
+        if (counted == mark) {
+            return false;
+        }
+        counted = mark;
+        return true;
+    }
+
+    // int[] and Object[] (compressed references) alike
+    private static long arrayBytes(int length) {
+        return 16 + 4L * length;
     }
 
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
         sb.append("@(");
-        for (int i = 0; i < list.size(); i++) {
+        for (int i = 0; i < size; i++) {
             if (i > 0) sb.append(", ");
-            Object value = list.get(i);
+            if (ints != null) {
+                sb.append(ints[slot(i)]);
+                continue;
+            }
+            Object value = at(i);
             sb.append(value == null ? "null" : value.toString());
         }
         sb.append(")");
@@ -0,0 +1,10 @@
+package com.simpleflow.lang.interpreter;
+
+// How a statement finished. Anything other than NORMAL unwinds to the
+// enclosing loop (NEXT, LEAVE) or function call (RETURN).
+public enum Completion {
+    NORMAL,
+    NEXT,
+    LEAVE,
+    RETURN
+}
@@ -0,0 +1,12 @@
+package com.simpleflow.lang.interpreter;
+
+// What the tree-walking Interpreter and the VM have in common, so a caller
+// can keep either kind around and reuse it between runs.
+public interface Engine {
+
+    void interpret(Program program);
+
+    // Back to the state of a freshly made engine, with only the builtins
+    // defined, now writing to 'out' and charging 'budget'.
+    void reset(Appendable out, Budget budget);
+}
@@ -1,56 +1,90 @@
 package com.simpleflow.lang.interpreter;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 public class Environment {
 
-    private final Map<String, Object> values = new HashMap<>();
+    // Marks a slot whose variable has not been stored yet.
+    public static final Object UNDEFINED = new Object();
+
+    private Object[] values;
     private final Environment enclosing;
 
+    // the last Footprint count that reached this environment
+    private short counted = 0;
+
     // Global environment
-    public Environment() {
-        this.enclosing = null;
+    public Environment(int size) {
+        this(null, size);
     }
 
     // Local / nested environment
-    public Environment(Environment enclosing) {
+    public Environment(Environment enclosing, int size) {
         this.enclosing = enclosing;
+        this.values = new Object[size];
+        Arrays.fill(values, UNDEFINED);
     }
 
-    public void define(String name, Object value) {
-        values.put(name, value);
+    // rough size of an environment with 'size' slots, for Budget.allocate()
+    public static long bytes(int size) {
+        return 32 + 4L * size;
     }
 
-    public Object get(String name) {
-        if (values.containsKey(name)) {
-            return values.get(name);
+    // bytes(size) for this environment; its values and the environments it
+    // is nested in go to 'count'
+    long footprint(Footprint count) {
+        for (Object value : values) {
+            count.add(value);
         }
+        count.add(enclosing);
+        return bytes(values.length);
+    }
 
-        if (enclosing != null) {
-            return enclosing.get(name);
+    // false if count 'mark' has already reached this environment
+    boolean mark(short mark) {
+        if (counted == mark) {
+            return false;
         }
+        counted = mark;
+        return true;
+    }
 
-        throw new RuntimeException("Undefined variable '" + name + "'.");
+    public void define(int slot, Object value) {
+        values[slot] = value;
     }
 
-    public void assign(String name, Object value) {
-        if (values.containsKey(name)) {
-            values.put(name, value);
-            return;
+    public Object get(int slot) {
+        if (slot >= values.length) {
+            return UNDEFINED;
         }
+        return values[slot];
+    }
 
-        if (enclosing != null) {
-            enclosing.assign(name, value);
-            return;
-        }
+    // The first 'count' slots, to be put back later with restore().
+    public Object[] snapshot(int count) {
+        return Arrays.copyOf(values, count);
+    }
 
-        throw new RuntimeException("Undefined variable '" + name + "'.");
+    // Puts 'snapshot' back in the first slots and marks every other slot undefined.
+    public void restore(Object[] snapshot) {
+        System.arraycopy(snapshot, 0, values, 0, snapshot.length);
+        Arrays.fill(values, snapshot.length, values.length, UNDEFINED);
     }
 
-    public boolean exists(String name) {
-        if (values.containsKey(name)) return true;
-        if (enclosing != null) return enclosing.exists(name);
-        return false;
+    public Environment ancestor(int depth) {
+        Environment env = this;
+        for (int i = 0; i < depth; i++) {
+            env = env.enclosing;
+        }
+        return env;
+    }
+
+    public void ensureCapacity(int size) {
+        if (size <= values.length) {
+            return;
+        }
+        int old = values.length;
+        values = Arrays.copyOf(values, Math.max(size, old * 2));
+        Arrays.fill(values, old, values.length, UNDEFINED);
     }
 }
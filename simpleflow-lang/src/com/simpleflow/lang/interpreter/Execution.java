@@ -0,0 +1,38 @@
+package com.simpleflow.lang.interpreter;
+
+import java.io.InputStream;
+import java.util.Random;
+import java.util.Scanner;
+
+// What a builtin may remember between calls during one run. The builtin table
+// is shared by every engine on every thread, so input() and random() keep
+// their reader and generator here instead; engines start a fresh one per run.
+// Both are created on first use, so a run that never reads never touches 'in'.
+public final class Execution {
+
+    private final InputStream in;
+    private Scanner input;
+    private Random random;
+
+    public Execution() {
+        this(System.in);
+    }
+
+    public Execution(InputStream in) {
+        this.in = in;
+    }
+
+    Scanner input() {
+        if (input == null) {
+            input = new Scanner(in);
+        }
+        return input;
+    }
+
+    Random random() {
+        if (random == null) {
+            random = new Random();
+        }
+        return random;
+    }
+}
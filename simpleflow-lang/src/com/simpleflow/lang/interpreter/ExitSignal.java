@@ -1,3 +1,11 @@
 package com.simpleflow.lang.interpreter;
 
-public class ExitSignal extends RuntimeException {}
+// 'exit' unwinds the whole program, so it stays an exception. It is thrown at
+// most once per run and carries no stack trace.
+public class ExitSignal extends RuntimeException {
+    public static final ExitSignal INSTANCE = new ExitSignal();
+
+    private ExitSignal() {
+        super(null, null, false, false);
+    }
+}
@@ -0,0 +1,72 @@
+package com.simpleflow.lang.interpreter;
+
+import java.util.ArrayDeque;
+import java.util.IdentityHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Rough bytes of everything reachable from the values an engine adds,
+// sized the way Budget.allocate() was charged for them. Cells, environments
+// and shared arrays are counted once however many references lead to them,
+// so cells that contain themselves are fine.
+//
+// Cells and environments are marked with this count's number rather than
+// kept in a set: a count can meet millions of them, usually just as the run
+// is close to its memory limit. Strings cannot be marked, so they go through
+// a fixed-size cache instead: a string met again is usually still in it, but
+// one that was pushed out is counted again, so text can be overcounted.
+// Walks with its own stack, since cells can nest deeper than the Java stack.
+public final class Footprint {
+
+    private static final AtomicInteger COUNTS = new AtomicInteger();
+    private static final int TEXT_CACHE = 1 << 16;
+
+    final short mark;
+    private final CharSequence[] texts = new CharSequence[TEXT_CACHE];
+    private final IdentityHashMap<Object, Boolean> seen = new IdentityHashMap<>(); // shared arrays
+    private final ArrayDeque<Object> pending = new ArrayDeque<>();
+    private long bytes = 0;
+
+    public Footprint() {
+        int next;
+        do {
+            next = COUNTS.incrementAndGet() & 0xFFFF;
+        } while (next == 0); // the mark of anything not counted yet
+        mark = (short) next;
+    }
+
+    public void add(Object value) {
+        if (value instanceof Cell cell) {
+            if (cell.mark(mark)) {
+                pending.push(cell);
+            }
+        } else if (value instanceof Environment env) {
+            if (env.mark(mark)) {
+                pending.push(env);
+            }
+        } else if (value instanceof Callable function) {
+            add(function.closure());
+        } else if (value instanceof CharSequence text) {
+            int slot = System.identityHashCode(text) & (TEXT_CACHE - 1);
+            if (texts[slot] != text) {
+                texts[slot] = text;
+                // as Rope.concatBytes() charges them
+                bytes += text instanceof Rope ? 24 + 2L * text.length() : 40 + text.length();
+            }
+        }
+    }
+
+    public long total() {
+        while (!pending.isEmpty()) {
+            Object value = pending.pop();
+            // add() counts text as it goes, so this must not be 'bytes += ...'
+            long size = value instanceof Cell cell ? cell.footprint(this) : ((Environment) value).footprint(this);
+            bytes += size;
+        }
+        return bytes;
+    }
+
+    // true the first time the shared array 'shared' is seen
+    boolean first(Object shared) {
+        return seen.put(shared, Boolean.TRUE) == null;
+    }
+}
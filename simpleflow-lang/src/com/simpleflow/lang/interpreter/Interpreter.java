@@ -1,67 +1,197 @@
 package com.simpleflow.lang.interpreter;
 
-import java.io.ByteArrayOutputStream;
-import java.io.PrintStream;
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Random;
-import java.util.Scanner;
+import java.util.Map;
 
+import com.simpleflow.lang.ast.Binding;
 import com.simpleflow.lang.ast.Expr;
 import com.simpleflow.lang.ast.Stmt;
 import com.simpleflow.lang.lexer.Lexer;
+import com.simpleflow.lang.lexer.Token;
 import com.simpleflow.lang.lexer.TokenType;
+import com.simpleflow.lang.optimizer.Optimizer;
 import com.simpleflow.lang.parser.ParseError;
 import com.simpleflow.lang.parser.Parser;
 
-public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
+public class Interpreter implements Engine, Expr.Visitor<Object>, Stmt.Visitor<Completion> {
 
-    private Environment environment = new Environment();
+    private final Resolver resolver = new Resolver();
+    private final Environment globals = new Environment(0);
+    private Appendable out;
+    private Budget budget;
+    private Execution execution = new Execution();
+
+    // the globals as they were right after the builtins were defined
+    private final Object[] builtins;
+    private Environment environment = globals;
     private boolean inLoop = false;
 
+    // set for a function called from a loop: its blocks then store into the
+    // function's own environment (see Stmt.Put.sharedDepth)
+    private boolean sharedScopes = false;
+
+    // value of the last executed 'return', read once by the function call
+    private Object returnValue;
+
+    // 'return f(...)' leaves the call to f here for the caller's invoke()
+    // loop to run, so tail calls do not nest
+    private UserFunction tailFunction;
+    private Environment tailFrame;
+
+    private int callDepth = 0;
+
+    // The environment each open call (or include) was made from. The one
+    // running now is 'environment'; these are only held in Java locals
+    // otherwise, and liveBytes() has to see them.
+    private Environment[] callers = new Environment[64];
+    private int callerCount = 0;
+
     // ---------------- ENTRY ----------------
 
     public Interpreter() {
-        environment.define("length", new LengthFunction());
-        environment.define("input", new InputFunction());
-        environment.define("random", new RandomFunction());
-        environment.define("clock", new ClockFunction());
-        environment.define("type", new TypeFunction());
-        environment.define("toNumber", new ToNumberFunction());
-        environment.define("toString", new ToStringFunction());
-        environment.define("push", new PushFunction());
-        environment.define("pop", new PopFunction());
-        environment.define("shift", new ShiftFunction());
-        environment.define("unshift", new UnshiftFunction());
-        environment.define("keys", new KeysFunction());
-        environment.define("values", new ValuesFunction());
-        environment.define("has", new HasFunction());
-        environment.define("slice", new SliceFunction());
-        environment.define("merge", new MergeFunction());
-        environment.define("assert", new AssertFunction());
+        this(System.out);
+    }
+
+    // show/print write to 'out', so each interpreter can have its own sink
+    public Interpreter(Appendable out) {
+        this(out, Budget.unlimited());
+    }
+
+    // loops and calls are charged to 'budget', which stops the run when spent
+    public Interpreter(Appendable out, Budget budget) {
+        this.out = out;
+        this.budget = budget;
+        budget.countLiveWith(this::liveBytes);
+        for (Map.Entry<String, Callable> builtin : Builtins.all().entrySet()) {
+            defineGlobal(builtin.getKey(), builtin.getValue());
+        }
+        this.builtins = globals.snapshot(resolver.globalCount());
+    }
+
+    @Override
+    public void reset(Appendable out, Budget budget) {
+        this.out = out;
+        this.budget = budget;
+        budget.countLiveWith(this::liveBytes);
+        this.execution = new Execution();
+        resolver.reset(builtins.length);
+        globals.restore(builtins);
+        environment = globals;
+        inLoop = false;
+        sharedScopes = false;
+        returnValue = null;
+        tailFunction = null;
+        tailFrame = null;
+        callDepth = 0;
+        Arrays.fill(callers, 0, callerCount, null);
+        callerCount = 0;
+    }
+
+    // what the run can still reach, for the budget's memory limit
+    private long liveBytes() {
+        Footprint count = new Footprint();
+        count.add(globals);
+        count.add(environment);
+        for (int i = 0; i < callerCount; i++) {
+            count.add(callers[i]);
+        }
+        count.add(returnValue);
+        count.add(tailFunction);
+        count.add(tailFrame);
+        return count.total();
+    }
+
+    private void pushCaller(Environment env) {
+        if (callerCount == callers.length) {
+            callers = Arrays.copyOf(callers, callerCount * 2);
+        }
+        callers[callerCount++] = env;
+    }
+
+    private void popCaller() {
+        callers[--callerCount] = null;
     }
 
     public void interpret(List<Stmt> statements) {
+        resolver.resolve(statements);
+        run(statements);
+    }
+
+    // Runs a program resolved ahead of time. Its globals have to line up
+    // with this interpreter's, which always holds for a fresh interpreter.
+    @Override
+    public void interpret(Program program) {
+        resolver.adopt(program.globals);
+        run(program.statements);
+    }
+
+    // Parses, resolves and runs one top-level statement at a time, so output
+    // starts before the rest of the source is lexed, and only what is still
+    // reachable (function bodies) is kept. Unlike interpret(), a parse error
+    // shows up when the parser gets there, after the statements before it ran.
+    public void interpretStreaming(Parser parser) {
+        Optimizer optimizer = new Optimizer();
+        while (true) {
+            List<Stmt> statements;
+            try {
+                Stmt stmt = parser.parseNext();
+                if (stmt == null) {
+                    return;
+                }
+                statements = optimizer.optimize(List.of(stmt));
+                resolver.resolve(statements);
+            } catch (StackOverflowError e) {
+                // the parser and resolver recurse once per level of nesting
+                throw new RuntimeException("Program is nested too deeply.");
+            }
+            if (!run(statements)) {
+                return;
+            }
+        }
+    }
+
+    // false once the program has stopped, by 'exit' or a top-level 'return'
+    private boolean run(List<Stmt> statements) {
+        globals.ensureCapacity(resolver.globalCount());
+
         try {
             for (Stmt stmt : statements) {
-                execute(stmt);
+                if (execute(stmt) != Completion.NORMAL) {
+                    return false; // top-level 'return' stops the program
+                }
             }
+            return true;
         } catch (ExitSignal ignored) {
             // program stopped
+            return false;
+        } catch (StackOverflowError e) {
+            // the thread's stack ran out before the budget's maxDepth did
+            throw new RuntimeException("Stack overflow.");
         }
     }
 
     public String interpretAndReturn(List<Stmt> statements) {
+        return captureOutput(() -> interpret(statements));
+    }
+
+    public String interpretAndReturn(Program program) {
+        return captureOutput(() -> interpret(program));
+    }
 
-        PrintStream originalOut = System.out;
-        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-        System.setOut(new PrintStream(buffer));
+    private String captureOutput(Runnable run) {
+
+        Appendable originalOut = out;
+        StringBuilder buffer = new StringBuilder();
+        out = buffer;
 
         try {
-            interpret(statements);
+            run.run();
         } finally {
-            System.setOut(originalOut);
+            out = originalOut;
         }
 
         return buffer
@@ -73,17 +203,36 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     public void interpretSource(String source) {
         try {
             Lexer lexer = new Lexer(source);
-            Parser parser = new Parser(lexer.scanTokens());
-            List<Stmt> statements = parser.parse();
-            interpret(statements);
+            Parser parser = new Parser(lexer);
+            List<Stmt> statements = new Optimizer().optimize(parser.parse());
+
+            // included code always runs at the top level
+            Environment previous = environment;
+            boolean previousInLoop = inLoop;
+            boolean previousShared = sharedScopes;
+            int previousDepth = callDepth;
+            pushCaller(previous);
+            try {
+                environment = globals;
+                inLoop = false;
+                sharedScopes = false;
+                callDepth = 0;
+                interpret(statements);
+            } finally {
+                popCaller();
+                environment = previous;
+                inLoop = previousInLoop;
+                sharedScopes = previousShared;
+                callDepth = previousDepth;
+            }
         } catch (ParseError e) {
             throw new RuntimeException(
                     "Parse error at line " + e.line + ", column " + e.column + ": " + e.getMessage());
         }
     }
 
-    private void execute(Stmt stmt) {
-        stmt.accept(this);
+    private Completion execute(Stmt stmt) {
+        return stmt.accept(this);
     }
 
     private Object evaluate(Expr expr) {
@@ -93,113 +242,140 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     // ---------------- STATEMENTS ----------------
 
     @Override
-    public Void visitPutStmt(Stmt.Put stmt) {
+    public Completion visitPutStmt(Stmt.Put stmt) {
         Object value = evaluate(stmt.initializer);
-        environment.define(stmt.name.lexeme, value);
+        define(stmt.slot, stmt.sharedDepth, stmt.sharedSlot, value);
 
-        return null;
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitAssignStmt(Stmt.Assign stmt) {
+    public Completion visitAssignStmt(Stmt.Assign stmt) {
         Object value = evaluate(stmt.value);
-        environment.assign(stmt.name.lexeme, value);
-        return null;
+        assign(stmt.binding, stmt.name, value);
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitPrintStmt(Stmt.Print stmt) {
+    public Completion visitPrintStmt(Stmt.Print stmt) {
         Object value = evaluate(stmt.expression);
-        System.out.println(stringify(value));
-        return null;
+        write(Values.stringify(value));
+        write("\n");
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitPrintInlineStmt(Stmt.PrintInline stmt) {
+    public Completion visitPrintInlineStmt(Stmt.PrintInline stmt) {
         Object value = evaluate(stmt.expression);
-        System.out.print(stringify(value));
-        return null;
+        write(Values.stringify(value));
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitExpressionStmt(Stmt.Expression stmt) {
+    public Completion visitExpressionStmt(Stmt.Expression stmt) {
         evaluate(stmt.expression);
-        return null;
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitBlockStmt(Stmt.Block stmt) {
+    public Completion visitBlockStmt(Stmt.Block stmt) {
 
-        if (inLoop) {
+        if (stmt.scopeSize < 0) {
             // SAME environment → allow mutation
             for (Stmt s : stmt.statements) {
-                execute(s);
+                Completion completion = execute(s);
+                if (completion != Completion.NORMAL) {
+                    return completion;
+                }
             }
-        } else {
-            // normal lexical scope
-            executeBlock(stmt.statements, new Environment(environment));
+            return Completion.NORMAL;
         }
 
-        return null;
+        // normal lexical scope
+        return executeBlock(stmt.statements, new Environment(environment, stmt.scopeSize));
     }
 
     @Override
-    public Void visitIfStmt(Stmt.If stmt) {
-        if (isTruthy(evaluate(stmt.condition))) {
-            execute(stmt.thenBranch);
+    public Completion visitIfStmt(Stmt.If stmt) {
+        if (Values.isTruthy(evaluate(stmt.condition))) {
+            return execute(stmt.thenBranch);
         } else if (stmt.elseBranch != null) {
-            execute(stmt.elseBranch);
+            return execute(stmt.elseBranch);
         }
-        return null;
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitWhileStmt(Stmt.While stmt) {
+    public Completion visitWhileStmt(Stmt.While stmt) {
 
         boolean previous = inLoop;
         inLoop = true;
 
         try {
-            while (isTruthy(evaluate(stmt.condition))) {
+            while (true) {
+                Completion completion;
                 try {
-                    execute(stmt.body);
-                } catch (NextSignal n) {
-                    continue;
-                } catch (LeaveSignal l) {
+                    if (!Values.isTruthy(evaluate(stmt.condition))) {
+                        break;
+                    }
+                    completion = execute(stmt.body);
+                } catch (LoopSignal signal) {
+                    // 'leave' or 'next' in a function called from the condition or body
+                    completion = signal == LoopSignal.LEAVE ? Completion.LEAVE : Completion.NEXT;
+                }
+                if (completion == Completion.LEAVE) {
                     break;
                 }
+                if (completion == Completion.RETURN) {
+                    return completion;
+                }
+                budget.step();
             }
         } finally {
             inLoop = previous;
         }
 
-        return null;
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitFunctionStmt(Stmt.Function stmt) {
-        environment.define(stmt.name.lexeme, new UserFunction(stmt, environment));
-        return null;
+    public Completion visitFunctionStmt(Stmt.Function stmt) {
+        Environment closure = stmt.captures ? environment : globals;
+        define(stmt.slot, stmt.sharedDepth, stmt.sharedSlot, new UserFunction(stmt, closure, this));
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitReturnStmt(Stmt.Return stmt) {
+    public Completion visitReturnStmt(Stmt.Return stmt) {
+        if (callDepth > 0 && !stmt.inLoop && stmt.value instanceof Expr.Call call) {
+            Callable function = callee(call);
+            if (function instanceof UserFunction user) {
+                tailFrame = frame(user, call);
+                tailFunction = user;
+                returnValue = null;
+                return Completion.RETURN;
+            }
+            returnValue = call(function, call);
+            return Completion.RETURN;
+        }
+
         Object value = null;
         if (stmt.value != null) {
             value = evaluate(stmt.value);
         }
-        throw new ReturnSignal(value);
+        returnValue = value;
+        return Completion.RETURN;
     }
 
     @Override
-    public Void visitIncludeStmt(Stmt.Include stmt) {
+    public Completion visitIncludeStmt(Stmt.Include stmt) {
         try {
             String source = Files.readString(Path.of(stmt.path));
             interpretSource(source);
         } catch (Exception e) {
             throw new RuntimeException("include failed: " + e.getMessage());
         }
-        return null;
+        return Completion.NORMAL;
     }
 
     // ---------------- EXPRESSIONS ----------------
@@ -215,7 +391,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         for (Expr element : expr.elements) {
             values.add(evaluate(element));
         }
-        return new Cell(values);
+        return new Cell(values, budget);
     }
 
     @Override
@@ -232,63 +408,113 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitVariableExpr(Expr.Variable expr) {
-        return environment.get(expr.name.lexeme);
+        if (expr.builtin != null) {
+            return expr.builtin;
+        }
+        return lookUp(expr.binding, expr.name);
     }
 
     @Override
     public Object visitBinaryExpr(Expr.Binary expr) {
+        if (!expr.generic) {
+            Object value = binaryInt(expr);
+            if (value != null) {
+                return value;
+            }
+            expr.generic = true;
+        }
+
         Object left = evaluate(expr.left);
         Object right = evaluate(expr.right);
 
+        Object value = Values.binary(expr.operator.type, left, right);
+        if (expr.operator.type == TokenType.PLUS && !(value instanceof Integer)) {
+            budget.allocate(Rope.concatBytes(left, value));
+        }
+        return value;
+    }
+
+    // ---- UNBOXED INT PATH ----
+
+    // No int fits in here, so it marks "not an int" in evaluateInt's result.
+    private static final long NOT_INT = Long.MIN_VALUE;
+
+    // Both operands through evaluateInt, so nested int arithmetic never boxes.
+    // Returns null, having done nothing observable, when either side is not an int.
+    private Object binaryInt(Expr.Binary expr) {
+        long left = evaluateInt(expr.left);
+        if (left == NOT_INT) {
+            return null;
+        }
+        long right = evaluateInt(expr.right);
+        if (right == NOT_INT) {
+            return null;
+        }
+
+        int l = (int) left;
+        int r = (int) right;
         return switch (expr.operator.type) {
-            case PLUS -> {
-                if (left instanceof Integer l && right instanceof Integer r)
-                    yield l + r;
-                if (left instanceof String || right instanceof String)
-                    yield String.valueOf(left) + String.valueOf(right);
-                throw new RuntimeException(
-                        "Type error: cannot add " + getTypeName(left) + " and " + getTypeName(right));
-            }
-            case MINUS -> {
-                if (left instanceof Integer l && right instanceof Integer r)
-                    yield l - r;
-                throw new RuntimeException("Type error: subtraction requires numbers.");
-            }
-            case STAR -> {
-                if (left instanceof Integer l && right instanceof Integer r)
-                    yield l * r;
-                throw new RuntimeException("Type error: multiplication requires numbers.");
-            }
-            case SLASH -> {
-                if (left instanceof Integer l && right instanceof Integer r)
-                    yield l / r;
-                throw new RuntimeException("Type error: division requires numbers.");
-            }
-            case GREATER -> {
-                if (left instanceof Integer l && right instanceof Integer r)
-                    yield l > r;
-                throw new RuntimeException("Type error: comparison requires numbers.");
-            }
-            case GREATER_EQUAL -> {
-                if (left instanceof Integer l && right instanceof Integer r)
-                    yield l >= r;
-                throw new RuntimeException("Type error: comparison requires numbers.");
+            case PLUS -> l + r;
+            case MINUS -> l - r;
+            case STAR -> l * r;
+            case SLASH -> l / r;
+            case GREATER -> l > r;
+            case GREATER_EQUAL -> l >= r;
+            case LESS -> l < r;
+            case LESS_EQUAL -> l <= r;
+            case EQUAL_EQUAL -> l == r;
+            case BANG_EQUAL -> l != r;
+            default -> null;
+        };
+    }
+
+    // Int arithmetic over variables, literals and cell elements. None of these
+    // have side effects, so giving up halfway (NOT_INT) is safe: the caller
+    // just evaluates again.
+    private long evaluateInt(Expr expr) {
+        if (expr instanceof Expr.Variable variable) {
+            return lookUp(variable.binding, variable.name) instanceof Integer i ? i : NOT_INT;
+        }
+        if (expr instanceof Expr.Literal literal) {
+            return literal.value instanceof Integer i ? i : NOT_INT;
+        }
+
+        // c[i] on a cell still holding ints is read without boxing
+        if (expr instanceof Expr.Index index && index.target instanceof Expr.Variable target) {
+            if (!(lookUp(target.binding, target.name) instanceof Cell cell) || !cell.holdsInts()) {
+                return NOT_INT;
             }
-            case LESS -> {
-                if (left instanceof Integer l && right instanceof Integer r)
-                    yield l < r;
-                throw new RuntimeException("Type error: comparison requires numbers.");
+            long i = evaluateInt(index.index);
+            return i >= 1 && i <= cell.length() ? cell.intAt((int) i) : NOT_INT;
+        }
+
+        if (expr instanceof Expr.Unary unary && unary.operator.type == TokenType.MINUS) {
+            long right = evaluateInt(unary.right);
+            return right == NOT_INT ? NOT_INT : -(int) right;
+        }
+
+        if (expr instanceof Expr.Binary binary && !binary.generic) {
+            long left = evaluateInt(binary.left);
+            if (left == NOT_INT) {
+                return NOT_INT;
             }
-            case LESS_EQUAL -> {
-                if (left instanceof Integer l && right instanceof Integer r)
-                    yield l <= r;
-                throw new RuntimeException("Type error: comparison requires numbers.");
+            long right = evaluateInt(binary.right);
+            if (right == NOT_INT) {
+                return NOT_INT;
             }
-            case EQUAL_EQUAL -> java.util.Objects.equals(left, right);
-            case BANG_EQUAL -> !java.util.Objects.equals(left, right);
 
-            default -> throw new RuntimeException("Unknown operator.");
-        };
+            int l = (int) left;
+            int r = (int) right;
+            return switch (binary.operator.type) {
+                case PLUS -> l + r;
+                case MINUS -> l - r;
+                case STAR -> l * r;
+                case SLASH -> l / r;
+                default -> NOT_INT;
+            };
+        }
+
+        return NOT_INT;
     }
 
     @Override
@@ -296,14 +522,11 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         Object right = evaluate(expr.right);
 
         if (expr.operator.type == TokenType.NOT) {
-            return !isTruthy(right);
+            return !Values.isTruthy(right);
         }
 
         if (expr.operator.type == TokenType.MINUS) {
-            if (right instanceof Integer i) {
-                return -i;
-            }
-            throw new RuntimeException("Unary minus expects a number.");
+            return Values.negate(right);
         }
 
         throw new RuntimeException("Unknown operator.");
@@ -312,7 +535,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     @Override
     public Object visitTernaryExpr(Expr.Ternary expr) {
         Object condition = evaluate(expr.condition);
-        if (isTruthy(condition)) {
+        if (Values.isTruthy(condition)) {
             return evaluate(expr.thenBranch);
         }
         return evaluate(expr.elseBranch);
@@ -320,8 +543,16 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitCallExpr(Expr.Call expr) {
+        return call(callee(expr), expr);
+    }
+
+    private Callable callee(Expr.Call expr) {
 
         Object callee = evaluate(expr.callee);
+        Object kind = callee instanceof UserFunction user ? user.declaration : callee;
+        if (kind == expr.checked && kind != null) {
+            return (Callable) callee; // already checked here
+        }
 
         if (!(callee instanceof Callable function)) {
             throw new RuntimeException("Can only call functions.");
@@ -333,37 +564,54 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
                             " arguments but got " + expr.arguments.size());
         }
 
-        List<Object> arguments = new java.util.ArrayList<>();
-        for (Expr argument : expr.arguments) {
-            arguments.add(evaluate(argument));
+        expr.checked = kind;
+        return function;
+    }
+
+    // user functions get their arguments written straight into the new frame
+    private Environment frame(UserFunction function, Expr.Call expr) {
+        Environment frame = new Environment(function.closure, function.declaration.frameSize);
+        for (int i = 0; i < expr.arguments.size(); i++) {
+            frame.define(i, evaluate(expr.arguments.get(i)));
         }
+        return frame;
+    }
 
-        return function.call(this, arguments);
+    private Object call(Callable function, Expr.Call expr) {
+        if (function instanceof UserFunction user) {
+            return user.invoke(frame(user, expr));
+        }
+
+        Object[] arguments = new Object[expr.arguments.size()];
+        for (int i = 0; i < arguments.length; i++) {
+            arguments[i] = evaluate(expr.arguments.get(i));
+        }
+        return function.call(execution, Arrays.asList(arguments));
     }
 
     @Override
-    public Void visitExitStmt(Stmt.Exit stmt) {
-        throw new ExitSignal();
+    public Completion visitExitStmt(Stmt.Exit stmt) {
+        throw ExitSignal.INSTANCE;
     }
 
     @Override
-    public Void visitLeaveStmt(Stmt.Leave stmt) {
+    public Completion visitLeaveStmt(Stmt.Leave stmt) {
         if (!inLoop) {
             throw new RuntimeException("leave used outside loop");
         }
-        throw new LeaveSignal();
+        return Completion.LEAVE;
     }
 
     @Override
-    public Void visitNextStmt(Stmt.Next stmt) {
+    public Completion visitNextStmt(Stmt.Next stmt) {
         if (!inLoop) {
             throw new RuntimeException("next used outside loop");
         }
-        throw new NextSignal();
+        return Completion.NEXT;
     }
 
     @Override
-    public Void visitIndexAssignStmt(Stmt.IndexAssign stmt) {
+    public Completion visitIndexAssignStmt(Stmt.IndexAssign stmt) {
         Object target = evaluate(stmt.target);
         if (!(target instanceof Cell cell)) {
             throw new RuntimeException("Can only index-assign into a cell.");
@@ -372,434 +620,194 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         Object index = evaluate(stmt.index);
         Object value = evaluate(stmt.value);
         cell.set(index, value);
-        return null;
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitIncDecStmt(Stmt.IncDec stmt) {
-        Object value = environment.get(stmt.name.lexeme);
+    public Completion visitIncDecStmt(Stmt.IncDec stmt) {
+        Object value = lookUp(stmt.binding, stmt.name);
         if (!(value instanceof Integer i)) {
             throw new RuntimeException("Can only apply ++/-- to numbers.");
         }
 
         int updated = (stmt.operator.type == TokenType.PLUS_PLUS) ? i + 1 : i - 1;
-        environment.assign(stmt.name.lexeme, updated);
-        return null;
+        assign(stmt.binding, stmt.name, updated);
+        return Completion.NORMAL;
     }
 
     // ---------------- HELPERS ----------------
 
-    private boolean isTruthy(Object value) {
-        if (value == null)
-            return false;
-        if (value instanceof Boolean b)
-            return b;
-        if (value instanceof Integer i)
-            return i != 0;
-        return true;
-    }
-
-    private String stringify(Object value) {
-        if (value == null)
-            return "null";
-        return value.toString();
-    }
-
-    private String getTypeName(Object value) {
-        if (value == null)
-            return "null";
-        if (value instanceof Integer)
-            return "number";
-        if (value instanceof String)
-            return "string";
-        if (value instanceof Boolean)
-            return "boolean";
-        if (value instanceof Cell)
-            return "cell";
-        return value.getClass().getSimpleName();
-    }
-
-    private void executeBlock(List<Stmt> statements, Environment newEnv) {
-        Environment previous = environment;
+    private void write(String text) {
         try {
-            environment = newEnv;
-            for (Stmt stmt : statements) {
-                execute(stmt);
-            }
-        } finally {
-            environment = previous;
-        }
-    }
-
-    @Override
-    public Object visitLogicalExpr(Expr.Logical expr) {
-        Object left = evaluate(expr.left);
-
-        if (expr.operator.type == TokenType.OR) {
-            if (isTruthy(left))
-                return true;
-        } else { // AND
-            if (!isTruthy(left))
-                return false;
-        }
-
-        Object right = evaluate(expr.right);
-        return isTruthy(right);
-    }
-
-    // ---------------- CONTROL FLOW ----------------
-
-    private static class ExitSignal extends RuntimeException {
-    }
-
-    private static class ReturnSignal extends RuntimeException {
-        final Object value;
-
-        ReturnSignal(Object value) {
-            this.value = value;
+            out.append(text);
+        } catch (IOException e) {
+            throw new RuntimeException("output failed: " + e.getMessage());
         }
     }
 
-    private interface Callable {
-        int arity();
-
-        Object call(Interpreter interpreter, List<Object> arguments);
+    private void defineGlobal(String name, Object value) {
+        int slot = resolver.globalSlot(name);
+        globals.ensureCapacity(slot + 1);
+        globals.define(slot, value);
     }
 
-    private static class UserFunction implements Callable {
-        private final Stmt.Function declaration;
-        private final Environment closure;
-
-        UserFunction(Stmt.Function declaration, Environment closure) {
-            this.declaration = declaration;
-            this.closure = closure;
-        }
-
-        @Override
-        public int arity() {
-            return declaration.params.size();
-        }
-
-        @Override
-        public Object call(Interpreter interpreter, List<Object> arguments) {
-            Environment previous = interpreter.environment;
-            interpreter.environment = new Environment(closure);
-
-            for (int i = 0; i < declaration.params.size(); i++) {
-                String name = declaration.params.get(i).lexeme;
-                interpreter.environment.define(name, arguments.get(i));
-            }
-
-            try {
-                interpreter.executeBlock(declaration.body, interpreter.environment);
-            } catch (ReturnSignal returnValue) {
-                interpreter.environment = previous;
-                return returnValue.value;
-            }
-
-            interpreter.environment = previous;
-            return null;
+    private void define(int slot, int sharedDepth, int sharedSlot, Object value) {
+        if (sharedDepth >= 0 && sharedScopes) {
+            environment.ancestor(sharedDepth).define(sharedSlot, value);
+        } else {
+            environment.define(slot, value);
         }
     }
 
-    private static class LengthFunction implements Callable {
-        @Override
-        public int arity() {
-            return 1;
-        }
-
-        @Override
-        public Object call(Interpreter interpreter, List<Object> arguments) {
-            Object value = arguments.get(0);
-            if (value instanceof Cell cell) {
-                return cell.length();
+    private Object lookUp(Binding binding, Token name) {
+        int[] depths = binding.depths;
+        for (int i = 0; i < depths.length; i++) {
+            Object value = environment.ancestor(depths[i]).get(binding.slots[i]);
+            if (value != Environment.UNDEFINED) {
+                return value;
             }
-            throw new RuntimeException("length() expects a cell.");
-        }
-    }
-
-    private static class InputFunction implements Callable {
-        private final Scanner scanner = new Scanner(System.in);
-
-        @Override
-        public int arity() {
-            return 0;
         }
 
-        @Override
-        public Object call(Interpreter interpreter, List<Object> arguments) {
-            try {
-                if (scanner.hasNextLine()) {
-                    return scanner.nextLine();
-                }
-            } catch (Exception ignored) {
-            }
-            return "";
+        Object value = globals.get(binding.global);
+        if (value == Environment.UNDEFINED) {
+            throw new RuntimeException("Undefined variable '" + name.lexeme + "'.");
         }
+        return value;
     }
 
-    private static class RandomFunction implements Callable {
-        private final Random random = new Random();
-
-        @Override
-        public int arity() {
-            return 2;
-        }
-
-        @Override
-        public Object call(Interpreter interpreter, List<Object> arguments) {
-            Object a = arguments.get(0);
-            Object b = arguments.get(1);
-            if (!(a instanceof Integer) || !(b instanceof Integer)) {
-                throw new RuntimeException("random(min, max) expects numbers.");
-            }
-            int min = (Integer) a;
-            int max = (Integer) b;
-            if (max < min) {
-                int tmp = min;
-                min = max;
-                max = tmp;
+    private void assign(Binding binding, Token name, Object value) {
+        int[] depths = binding.depths;
+        for (int i = 0; i < depths.length; i++) {
+            Environment env = environment.ancestor(depths[i]);
+            if (env.get(binding.slots[i]) != Environment.UNDEFINED) {
+                env.define(binding.slots[i], value);
+                return;
             }
-            return min + random.nextInt(max - min + 1);
         }
-    }
 
-    private static class ClockFunction implements Callable {
-        @Override
-        public int arity() {
-            return 0;
-        }
-
-        @Override
-        public Object call(Interpreter interpreter, List<Object> arguments) {
-            return (int) (System.currentTimeMillis() / 1000);
+        if (globals.get(binding.global) == Environment.UNDEFINED) {
+            throw new RuntimeException("Undefined variable '" + name.lexeme + "'.");
         }
+        globals.define(binding.global, value);
     }
 
-    private static class TypeFunction implements Callable {
-        @Override
-        public int arity() {
-            return 1;
-        }
-
-        @Override
-        public Object call(Interpreter interpreter, List<Object> arguments) {
-            Object value = arguments.get(0);
-            if (value == null)
-                return "null";
-            if (value instanceof Integer)
-                return "number";
-            if (value instanceof String)
-                return "string";
-            if (value instanceof Boolean)
-                return "boolean";
-            if (value instanceof Cell)
-                return "cell";
-            if (value instanceof Callable)
-                return "function";
-            return "unknown";
-        }
-    }
-
-    private static class ToNumberFunction implements Callable {
-        @Override
-        public int arity() {
-            return 1;
-        }
-
-        @Override
-        public Object call(Interpreter interpreter, List<Object> arguments) {
-            Object value = arguments.get(0);
-            if (value instanceof Integer)
-                return value;
-            if (value instanceof Boolean b)
-                return b ? 1 : 0;
-            if (value instanceof String s) {
-                try {
-                    return Integer.parseInt(s.trim());
-                } catch (NumberFormatException e) {
-                    throw new RuntimeException("toNumber() invalid string.");
+    private Completion executeBlock(List<Stmt> statements, Environment newEnv) {
+        Environment previous = environment;
+        try {
+            environment = newEnv;
+            for (Stmt stmt : statements) {
+                Completion completion = execute(stmt);
+                if (completion != Completion.NORMAL) {
+                    return completion;
                 }
             }
-            throw new RuntimeException("toNumber() expects number/string/bool.");
-        }
-    }
-
-    private static class ToStringFunction implements Callable {
-        @Override
-        public int arity() {
-            return 1;
-        }
-
-        @Override
-        public Object call(Interpreter interpreter, List<Object> arguments) {
-            return interpreter.stringify(arguments.get(0));
-        }
-    }
-
-    private static class PushFunction implements Callable {
-        @Override
-        public int arity() {
-            return 2;
-        }
-
-        @Override
-        public Object call(Interpreter interpreter, List<Object> arguments) {
-            Object target = arguments.get(0);
-            if (!(target instanceof Cell cell)) {
-                throw new RuntimeException("push() expects a cell.");
-            }
-            cell.push(arguments.get(1));
-            return cell;
-        }
-    }
-
-    private static class PopFunction implements Callable {
-        @Override
-        public int arity() {
-            return 1;
-        }
-
-        @Override
-        public Object call(Interpreter interpreter, List<Object> arguments) {
-            Object target = arguments.get(0);
-            if (!(target instanceof Cell cell)) {
-                throw new RuntimeException("pop() expects a cell.");
-            }
-            return cell.pop();
+            return Completion.NORMAL;
+        } finally {
+            environment = previous;
         }
     }
 
-    private static class ShiftFunction implements Callable {
-        @Override
-        public int arity() {
-            return 1;
-        }
-
-        @Override
-        public Object call(Interpreter interpreter, List<Object> arguments) {
-            Object target = arguments.get(0);
-            if (!(target instanceof Cell cell)) {
-                throw new RuntimeException("shift() expects a cell.");
-            }
-            return cell.shift();
-        }
-    }
+    @Override
+    public Object visitLogicalExpr(Expr.Logical expr) {
+        Object left = evaluate(expr.left);
 
-    private static class UnshiftFunction implements Callable {
-        @Override
-        public int arity() {
-            return 2;
+        if (expr.operator.type == TokenType.OR) {
+            if (Values.isTruthy(left))
+                return true;
+        } else { // AND
+            if (!Values.isTruthy(left))
+                return false;
         }
 
-        @Override
-        public Object call(Interpreter interpreter, List<Object> arguments) {
-            Object target = arguments.get(0);
-            if (!(target instanceof Cell cell)) {
-                throw new RuntimeException("unshift() expects a cell.");
-            }
-            cell.unshift(arguments.get(1));
-            return cell;
-        }
+        Object right = evaluate(expr.right);
+        return Values.isTruthy(right);
     }
 
-    private static class KeysFunction implements Callable {
-        @Override
-        public int arity() {
-            return 1;
-        }
-
-        @Override
-        public Object call(Interpreter interpreter, List<Object> arguments) {
-            Object target = arguments.get(0);
-            if (!(target instanceof Cell cell)) {
-                throw new RuntimeException("keys() expects a cell.");
-            }
-            return cell.keys();
-        }
-    }
+    // ---------------- CONTROL FLOW ----------------
 
-    private static class ValuesFunction implements Callable {
-        @Override
-        public int arity() {
-            return 1;
-        }
+    private static class UserFunction implements Callable {
+        private final Stmt.Function declaration;
+        private final Environment closure;
+        private final Interpreter interpreter;
 
-        @Override
-        public Object call(Interpreter interpreter, List<Object> arguments) {
-            Object target = arguments.get(0);
-            if (!(target instanceof Cell cell)) {
-                throw new RuntimeException("values() expects a cell.");
-            }
-            return cell.values();
+        UserFunction(Stmt.Function declaration, Environment closure, Interpreter interpreter) {
+            this.declaration = declaration;
+            this.closure = closure;
+            this.interpreter = interpreter;
         }
-    }
 
-    private static class HasFunction implements Callable {
         @Override
         public int arity() {
-            return 2;
-        }
-
-        @Override
-        public Object call(Interpreter interpreter, List<Object> arguments) {
-            Object target = arguments.get(0);
-            if (!(target instanceof Cell cell)) {
-                throw new RuntimeException("has() expects a cell.");
-            }
-            return cell.has(arguments.get(1));
+            return declaration.params.size();
         }
-    }
 
-    private static class SliceFunction implements Callable {
         @Override
-        public int arity() {
-            return 3;
+        public Environment closure() {
+            return closure;
         }
 
         @Override
-        public Object call(Interpreter interpreter, List<Object> arguments) {
-            Object target = arguments.get(0);
-            if (!(target instanceof Cell cell)) {
-                throw new RuntimeException("slice() expects a cell.");
-            }
-            if (!(arguments.get(1) instanceof Integer start) ||
-                    !(arguments.get(2) instanceof Integer end)) {
-                throw new RuntimeException("slice() expects start/end numbers.");
+        public Object call(Execution execution, List<Object> arguments) {
+            Environment frame = new Environment(closure, declaration.frameSize);
+            for (int i = 0; i < arguments.size(); i++) {
+                frame.define(i, arguments.get(i));
             }
-            return cell.slice(start, end);
+            return invoke(frame);
         }
-    }
 
-    private static class MergeFunction implements Callable {
-        @Override
-        public int arity() {
-            return 2;
-        }
-
-        @Override
-        public Object call(Interpreter interpreter, List<Object> arguments) {
-            if (!(arguments.get(0) instanceof Cell a) || !(arguments.get(1) instanceof Cell b)) {
-                throw new RuntimeException("merge() expects two cells.");
+        // Runs the body in 'frame', whose parameter slots are already filled.
+        // Tail calls left by 'return f(...)' run here too, in the same Java frame.
+        Object invoke(Environment frame) {
+            Interpreter in = interpreter;
+            if (in.callDepth >= in.budget.maxDepth()) {
+                throw new RuntimeException("Stack overflow.");
             }
-            return a.merge(b);
-        }
-    }
+            in.callDepth++;
+            in.pushCaller(in.environment);
 
-    private static class AssertFunction implements Callable {
-        @Override
-        public int arity() {
-            return 2;
-        }
+            // the body keeps the caller's inLoop: a 'leave' or 'next' outside
+            // any loop of its own applies to the loop the call was made from
+            boolean previousInLoop = in.inLoop;
+            boolean previousShared = in.sharedScopes;
+            in.sharedScopes = in.inLoop;
 
-        @Override
-        public Object call(Interpreter interpreter, List<Object> arguments) {
-            Object condition = arguments.get(0);
-            Object message = arguments.get(1);
-            if (!interpreter.isTruthy(condition)) {
-                throw new RuntimeException("assert failed: " + interpreter.stringify(message));
+            long frameBytes = 0;
+            try {
+                UserFunction function = this;
+                while (true) {
+                    in.budget.step();
+                    in.budget.release(frameBytes);
+                    frameBytes = Environment.bytes(function.declaration.frameSize);
+                    in.budget.allocate(frameBytes);
+
+                    Completion completion = in.executeBlock(function.declaration.body, frame);
+                    if (completion == Completion.LEAVE) {
+                        throw LoopSignal.LEAVE;
+                    }
+                    if (completion == Completion.NEXT) {
+                        throw LoopSignal.NEXT;
+                    }
+                    if (completion != Completion.RETURN) {
+                        return null;
+                    }
+                    if (in.tailFunction == null) {
+                        Object value = in.returnValue;
+                        in.returnValue = null;
+                        return value;
+                    }
+
+                    function = in.tailFunction;
+                    frame = in.tailFrame;
+                    in.tailFunction = null;
+                    in.tailFrame = null;
+                }
+            } finally {
+                in.budget.release(frameBytes);
+                in.inLoop = previousInLoop;
+                in.sharedScopes = previousShared;
+                in.callDepth--;
+                in.popCaller();
             }
-            return null;
         }
     }
 }
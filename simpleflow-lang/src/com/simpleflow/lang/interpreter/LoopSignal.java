@@ -0,0 +1,14 @@
+package com.simpleflow.lang.interpreter;
+
+// 'leave' or 'next' in a function that was called from inside a loop ends
+// the function and applies to the caller's loop. The function call is an
+// expression, so this unwinds as an exception to the nearest loop on the
+// Java stack. Both instances are shared and carry no stack trace.
+public class LoopSignal extends RuntimeException {
+    public static final LoopSignal LEAVE = new LoopSignal();
+    public static final LoopSignal NEXT = new LoopSignal();
+
+    private LoopSignal() {
+        super(null, null, false, false);
+    }
+}
@@ -1,3 +0,0 @@
-package com.simpleflow.lang.interpreter;
-
-public class NextSignal extends RuntimeException {}
@@ -0,0 +1,32 @@
+package com.simpleflow.lang.interpreter;
+
+import java.util.List;
+
+import com.simpleflow.lang.ast.Stmt;
+
+// A parsed and resolved program. After resolve() the only writes to its AST
+// are Binary.generic hints, which only ever go from false to true, and the
+// Call.checked inline caches, which are only compared by identity. Both are
+// safe to race, so one Program can be run by any number of interpreters, on any thread.
+// Builtins it cannot replace are bound to the shared table, which is the same
+// for every engine.
+public final class Program {
+    public final List<Stmt> statements;
+
+    // global names in slot order, as the resolver numbered them
+    public final List<String> globals;
+
+    private Program(List<Stmt> statements, List<String> globals) {
+        this.statements = statements;
+        this.globals = globals;
+    }
+
+    public static Program resolve(List<Stmt> statements) {
+        Resolver resolver = new Resolver();
+        for (String name : Builtins.all().keySet()) {
+            resolver.globalSlot(name);
+        }
+        resolver.resolveProgram(statements);
+        return new Program(List.copyOf(statements), resolver.globalNames());
+    }
+}
@@ -0,0 +1,462 @@
+package com.simpleflow.lang.interpreter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.simpleflow.lang.ast.Binding;
+import com.simpleflow.lang.ast.Expr;
+import com.simpleflow.lang.ast.Stmt;
+import com.simpleflow.lang.lexer.Token;
+
+public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+
+    private final Map<String, Integer> globals = new HashMap<>();
+    private final List<String> globalNames = new ArrayList<>();
+
+    // Local scopes, innermost last. Each one matches an Environment at runtime.
+    private final List<Scope> scopes = new ArrayList<>();
+    private boolean inLoop = false;
+
+    // Functions being resolved, innermost last, and the index of each one's
+    // own scope in 'scopes'.
+    private final List<Stmt.Function> functions = new ArrayList<>();
+    private final List<Integer> functionScopes = new ArrayList<>();
+
+    // Only while resolveProgram() runs: global reads of builtin names, and
+    // what could make them mean something else.
+    private List<Expr.Variable> builtinReads = null;
+    private final Set<String> globalWrites = new HashSet<>();
+    private boolean includes = false;
+
+    // ---------------- ENTRY ----------------
+
+    public void resolve(List<Stmt> statements) {
+        for (Stmt stmt : statements) {
+            resolve(stmt);
+        }
+    }
+
+    // Resolves a complete program, which nothing can add to later. A builtin
+    // it never stores to, assigns or redefines is bound straight to the
+    // shared function, so calling it skips the global lookup. An include
+    // could do any of that at runtime, so then nothing is bound.
+    public void resolveProgram(List<Stmt> statements) {
+        builtinReads = new ArrayList<>();
+        try {
+            resolve(statements);
+            if (!includes) {
+                for (Expr.Variable read : builtinReads) {
+                    if (!globalWrites.contains(read.name.lexeme)) {
+                        read.builtin = Builtins.all().get(read.name.lexeme);
+                    }
+                }
+            }
+        } finally {
+            builtinReads = null;
+            globalWrites.clear();
+            includes = false;
+        }
+    }
+
+    public int globalSlot(String name) {
+        Integer slot = globals.get(name);
+        if (slot == null) {
+            slot = globals.size();
+            globals.put(name, slot);
+            globalNames.add(name);
+        }
+        return slot;
+    }
+
+    public String globalName(int slot) {
+        return globalNames.get(slot);
+    }
+
+    public List<String> globalNames() {
+        return List.copyOf(globalNames);
+    }
+
+    // Takes over the globals of a program resolved elsewhere, so its slots
+    // mean the same thing here. Fails if this resolver numbered them differently.
+    public void adopt(List<String> names) {
+        for (int i = 0; i < names.size(); i++) {
+            if (globalSlot(names.get(i)) != i) {
+                throw new IllegalStateException("Program was resolved against different globals.");
+            }
+        }
+    }
+
+    public int globalCount() {
+        return globals.size();
+    }
+
+    // Forgets every global numbered 'count' or higher, along with anything a
+    // failed resolve() left behind.
+    public void reset(int count) {
+        while (globalNames.size() > count) {
+            globals.remove(globalNames.remove(globalNames.size() - 1));
+        }
+        scopes.clear();
+        functions.clear();
+        functionScopes.clear();
+        inLoop = false;
+    }
+
+    private void resolve(Stmt stmt) {
+        stmt.accept(this);
+    }
+
+    private void resolve(Expr expr) {
+        expr.accept(this);
+    }
+
+    // ---------------- SCOPES ----------------
+
+    private static class Scope {
+        final Map<String, Integer> slots = new HashMap<>();
+        int size = 0;
+
+        // a block in a function body outside that function's loops
+        boolean shared = false;
+    }
+
+    private Scope beginScope() {
+        Scope scope = new Scope();
+        scopes.add(scope);
+        return scope;
+    }
+
+    // How far up the enclosing function's scope is from a store in the
+    // innermost scope, if that is a shared block; -1 otherwise.
+    private int sharedDepth() {
+        if (scopes.isEmpty() || !scopes.get(scopes.size() - 1).shared) {
+            return -1;
+        }
+        return scopes.size() - 1 - functionScopes.get(functionScopes.size() - 1);
+    }
+
+    // the name's slot in the scope 'depth' up
+    private int slotAt(int depth, Token name) {
+        return scopes.get(scopes.size() - 1 - depth).slots.get(name.lexeme);
+    }
+
+    private void endScope() {
+        scopes.remove(scopes.size() - 1);
+    }
+
+    // A name stored anywhere in a scope can be visible before its 'store' runs
+    // (loops and nested functions), so every declaration is collected first.
+    private void declareAll(Scope scope, List<Stmt> statements, boolean loop) {
+        for (Stmt stmt : statements) {
+            declareAll(scope, stmt, loop);
+        }
+    }
+
+    private void declareAll(Scope scope, Stmt stmt, boolean loop) {
+        if (stmt instanceof Stmt.Put put) {
+            declare(scope, put.name);
+        } else if (stmt instanceof Stmt.Function function) {
+            declare(scope, function.name);
+        } else if (stmt instanceof Stmt.Block block && loop) {
+            declareAll(scope, block.statements, true);
+        } else if (stmt instanceof Stmt.If ifStmt) {
+            declareAll(scope, ifStmt.thenBranch, loop);
+            if (ifStmt.elseBranch != null) {
+                declareAll(scope, ifStmt.elseBranch, loop);
+            }
+        } else if (stmt instanceof Stmt.While whileStmt) {
+            declareAll(scope, whileStmt.body, true);
+        }
+    }
+
+    private int declare(Scope scope, Token name) {
+        Integer slot = scope.slots.get(name.lexeme);
+        if (slot == null) {
+            slot = scope.size++;
+            scope.slots.put(name.lexeme, slot);
+        }
+        return slot;
+    }
+
+    private int define(Token name) {
+        if (scopes.isEmpty()) {
+            wrote(name);
+            return globalSlot(name.lexeme);
+        }
+        return declare(scopes.get(scopes.size() - 1), name);
+    }
+
+    private Binding bind(Token name) {
+        int[] depths = new int[scopes.size()];
+        int[] slots = new int[scopes.size()];
+        int count = 0;
+
+        for (int i = scopes.size() - 1; i >= 0; i--) {
+            Integer slot = scopes.get(i).slots.get(name.lexeme);
+            if (slot != null) {
+                depths[count] = scopes.size() - 1 - i;
+                slots[count] = slot;
+                count++;
+                markCaptured(i);
+            }
+        }
+
+        return new Binding(
+                Arrays.copyOf(depths, count),
+                Arrays.copyOf(slots, count),
+                globalSlot(name.lexeme));
+    }
+
+    private void wrote(Token name) {
+        if (builtinReads != null) {
+            globalWrites.add(name.lexeme);
+        }
+    }
+
+    // Every function whose own scope is inside scope 'index' reads through
+    // its closure to get there.
+    private void markCaptured(int index) {
+        for (int f = functions.size() - 1; f >= 0 && functionScopes.get(f) > index; f--) {
+            functions.get(f).captures = true;
+        }
+    }
+
+    // ---------------- STATEMENTS ----------------
+
+    @Override
+    public Void visitPutStmt(Stmt.Put stmt) {
+        resolve(stmt.initializer);
+        stmt.slot = define(stmt.name);
+        stmt.sharedDepth = sharedDepth();
+        if (stmt.sharedDepth >= 0) {
+            stmt.sharedSlot = slotAt(stmt.sharedDepth, stmt.name);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitAssignStmt(Stmt.Assign stmt) {
+        resolve(stmt.value);
+        stmt.binding = bind(stmt.name);
+        wrote(stmt.name); // it may fall through to the global
+        return null;
+    }
+
+    @Override
+    public Void visitIndexAssignStmt(Stmt.IndexAssign stmt) {
+        resolve(stmt.target);
+        resolve(stmt.index);
+        resolve(stmt.value);
+        return null;
+    }
+
+    @Override
+    public Void visitIncDecStmt(Stmt.IncDec stmt) {
+        stmt.binding = bind(stmt.name);
+        wrote(stmt.name);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        resolve(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintInlineStmt(Stmt.PrintInline stmt) {
+        resolve(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        resolve(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        if (inLoop) {
+            // loop bodies share the environment the loop started in
+            stmt.scopeSize = -1;
+            resolve(stmt.statements);
+            return null;
+        }
+
+        Scope scope = new Scope();
+        declareAll(scope, stmt.statements, false);
+        if (scope.size == 0) {
+            // stores nothing of its own, so an environment would only be a
+            // level to look through
+            stmt.scopeSize = -1;
+            resolve(stmt.statements);
+            return null;
+        }
+
+        scope.shared = !functions.isEmpty();
+        scopes.add(scope);
+        resolve(stmt.statements);
+        endScope();
+        stmt.scopeSize = scope.size;
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        resolve(stmt.condition);
+        resolve(stmt.thenBranch);
+        if (stmt.elseBranch != null) {
+            resolve(stmt.elseBranch);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        boolean previous = inLoop;
+        inLoop = true;
+        resolve(stmt.condition);
+        resolve(stmt.body);
+        inLoop = previous;
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        stmt.slot = define(stmt.name);
+        stmt.sharedDepth = sharedDepth();
+        if (stmt.sharedDepth >= 0) {
+            stmt.sharedSlot = slotAt(stmt.sharedDepth, stmt.name);
+        }
+
+        boolean previous = inLoop;
+        inLoop = false;
+
+        stmt.captures = false;
+        functions.add(stmt);
+        functionScopes.add(scopes.size());
+        Scope scope = beginScope();
+        // parameter i always lives in slot i, even if a name is repeated
+        for (Token param : stmt.params) {
+            scope.slots.put(param.lexeme, scope.size++);
+        }
+        // names stored in the body's blocks get a slot here as well, for
+        // calls in which those blocks share this scope (see Put.sharedDepth)
+        declareAll(scope, stmt.body, true);
+        resolve(stmt.body);
+        endScope();
+        functions.remove(functions.size() - 1);
+        functionScopes.remove(functionScopes.size() - 1);
+
+        inLoop = previous;
+        stmt.frameSize = scope.size;
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        stmt.inLoop = inLoop;
+        if (stmt.value != null) {
+            resolve(stmt.value);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitExitStmt(Stmt.Exit stmt) {
+        return null;
+    }
+
+    @Override
+    public Void visitLeaveStmt(Stmt.Leave stmt) {
+        return null;
+    }
+
+    @Override
+    public Void visitNextStmt(Stmt.Next stmt) {
+        return null;
+    }
+
+    @Override
+    public Void visitIncludeStmt(Stmt.Include stmt) {
+        // included files are resolved against the globals when they run
+        includes = true;
+        return null;
+    }
+
+    // ---------------- EXPRESSIONS ----------------
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        resolve(expr.left);
+        resolve(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        resolve(expr.left);
+        resolve(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        resolve(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitTernaryExpr(Expr.Ternary expr) {
+        resolve(expr.condition);
+        resolve(expr.thenBranch);
+        resolve(expr.elseBranch);
+        return null;
+    }
+
+    @Override
+    public Void visitCellLiteralExpr(Expr.CellLiteral expr) {
+        for (Expr element : expr.elements) {
+            resolve(element);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitIndexExpr(Expr.Index expr) {
+        resolve(expr.target);
+        resolve(expr.index);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        expr.binding = bind(expr.name);
+        expr.builtin = null;
+        if (builtinReads != null && expr.binding.depths.length == 0
+                && Builtins.all().containsKey(expr.name.lexeme)) {
+            builtinReads.add(expr);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr) {
+        resolve(expr.callee);
+        for (Expr argument : expr.arguments) {
+            resolve(argument);
+        }
+        return null;
+    }
+}
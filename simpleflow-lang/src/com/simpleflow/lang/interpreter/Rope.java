@@ -0,0 +1,91 @@
+package com.simpleflow.lang.interpreter;
+
+// A long string built by '+', kept unflattened so 's = s + x' in a loop is
+// amortized O(1) per append instead of copying all of 's' every time.
+//
+// Ropes are string values like String: type() says "string" and Values
+// flattens them wherever the text is looked at (equality, map keys,
+// toNumber, printing). Only concat() ever makes one.
+//
+// Several ropes can share one builder. A rope owns the first 'length'
+// chars, which never change afterwards; appending in place is only allowed
+// for the rope that ends where the builder does, anyone else copies first.
+public final class Rope implements CharSequence {
+
+    // results shorter than this stay plain Strings
+    private static final int MIN_LENGTH = 256;
+
+    private final StringBuilder chars;
+    private final int length;
+    private String flat;
+
+    private Rope(StringBuilder chars, int length) {
+        this.chars = chars;
+        this.length = length;
+    }
+
+    // left + right, where at least one of them is a string value
+    static Object concat(Object left, Object right) {
+        if (left instanceof Rope rope) {
+            return rope.append(Values.stringify(right));
+        }
+
+        String l = Values.stringify(left);
+        String r = Values.stringify(right);
+        if (l.length() + r.length() < MIN_LENGTH) {
+            return l + r;
+        }
+
+        StringBuilder chars = new StringBuilder(Math.max(2 * (l.length() + r.length()), 2 * MIN_LENGTH));
+        chars.append(l).append(r);
+        return new Rope(chars, chars.length());
+    }
+
+    // Rough bytes allocated by the '+' that made 'result' (a string value)
+    // out of 'left', for Budget.allocate(). Appending to a rope is charged
+    // for the new chars only.
+    public static long concatBytes(Object left, Object result) {
+        if (result instanceof Rope rope) {
+            int added = left instanceof Rope l ? rope.length - l.length : rope.length;
+            return 24 + 2L * added; // the builder doubles, so about 2 bytes a char
+        }
+        return 40 + result.toString().length();
+    }
+
+    private Rope append(String text) {
+        StringBuilder target = chars;
+        if (target.length() != length) {
+            // another rope already appended to this builder
+            target = new StringBuilder(2 * (length + text.length()));
+            target.append(chars, 0, length);
+        }
+        target.append(text);
+        return new Rope(target, target.length());
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return chars.charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+        if (flat == null) {
+            flat = chars.substring(0, length);
+        }
+        return flat;
+    }
+}
@@ -0,0 +1,114 @@
+package com.simpleflow.lang.interpreter;
+
+import java.util.Objects;
+
+import com.simpleflow.lang.lexer.TokenType;
+
+public final class Values {
+
+    private Values() {
+    }
+
+    public static boolean isTruthy(Object value) {
+        if (value == null)
+            return false;
+        if (value instanceof Boolean b)
+            return b;
+        if (value instanceof Integer i)
+            return i != 0;
+        return true;
+    }
+
+    public static String stringify(Object value) {
+        if (value == null)
+            return "null";
+        return value.toString();
+    }
+
+    public static String typeName(Object value) {
+        if (value == null)
+            return "null";
+        if (value instanceof Integer)
+            return "number";
+        if (value instanceof String || value instanceof Rope)
+            return "string";
+        if (value instanceof Boolean)
+            return "boolean";
+        if (value instanceof Cell)
+            return "cell";
+        return value.getClass().getSimpleName();
+    }
+
+    public static Object binary(TokenType operator, Object left, Object right) {
+        return switch (operator) {
+            case PLUS -> {
+                if (left instanceof Integer l && right instanceof Integer r)
+                    yield l + r;
+                if (isString(left) || isString(right))
+                    yield Rope.concat(left, right);
+                throw new RuntimeException(
+                        "Type error: cannot add " + typeName(left) + " and " + typeName(right));
+            }
+            case MINUS -> {
+                if (left instanceof Integer l && right instanceof Integer r)
+                    yield l - r;
+                throw new RuntimeException("Type error: subtraction requires numbers.");
+            }
+            case STAR -> {
+                if (left instanceof Integer l && right instanceof Integer r)
+                    yield l * r;
+                throw new RuntimeException("Type error: multiplication requires numbers.");
+            }
+            case SLASH -> {
+                if (left instanceof Integer l && right instanceof Integer r)
+                    yield l / r;
+                throw new RuntimeException("Type error: division requires numbers.");
+            }
+            case GREATER -> {
+                if (left instanceof Integer l && right instanceof Integer r)
+                    yield l > r;
+                throw new RuntimeException("Type error: comparison requires numbers.");
+            }
+            case GREATER_EQUAL -> {
+                if (left instanceof Integer l && right instanceof Integer r)
+                    yield l >= r;
+                throw new RuntimeException("Type error: comparison requires numbers.");
+            }
+            case LESS -> {
+                if (left instanceof Integer l && right instanceof Integer r)
+                    yield l < r;
+                throw new RuntimeException("Type error: comparison requires numbers.");
+            }
+            case LESS_EQUAL -> {
+                if (left instanceof Integer l && right instanceof Integer r)
+                    yield l <= r;
+                throw new RuntimeException("Type error: comparison requires numbers.");
+            }
+            case EQUAL_EQUAL -> equal(left, right);
+            case BANG_EQUAL -> !equal(left, right);
+
+            default -> throw new RuntimeException("Unknown operator.");
+        };
+    }
+
+    // '==' on values; a rope equals the String with the same text
+    public static boolean equal(Object left, Object right) {
+        return Objects.equals(flat(left), flat(right));
+    }
+
+    // the value with any rope turned into its String
+    public static Object flat(Object value) {
+        return value instanceof Rope rope ? rope.toString() : value;
+    }
+
+    private static boolean isString(Object value) {
+        return value instanceof String || value instanceof Rope;
+    }
+
+    public static Object negate(Object right) {
+        if (right instanceof Integer i) {
+            return -i;
+        }
+        throw new RuntimeException("Unary minus expects a number.");
+    }
+}
@@ -1,154 +1,190 @@
 package com.simpleflow.lang.lexer;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
-public class Lexer {
+// Scans the source one token at a time, on demand (see TokenStream), or all
+// at once with scanTokens().
+//
+// Lexemes are never cut out of the source per token: punctuation uses
+// constant strings, and names, keywords, numbers and string literals are
+// interned in a table owned by this lexer, so each distinct lexeme is one
+// String however often it appears. Numbers are computed while scanning.
+public class Lexer implements TokenStream {
 
-    private final String source;
-    private final List<Token> tokens = new ArrayList<>();
+    private final char[] source;
 
     private int start = 0;
     private int current = 0;
     private int line = 1;
     private int column = 1;
 
-    private static final Map<String, TokenType> keywords;
-
-    static {
-        keywords = new HashMap<>();
-        keywords.put("set", TokenType.STORE);
-        keywords.put("store", TokenType.STORE);
-        keywords.put("print", TokenType.PRINT);
-        keywords.put("say", TokenType.SAY);
-        keywords.put("show", TokenType.SHOW);
-        keywords.put("and", TokenType.AND);
-        keywords.put("or", TokenType.OR);
-        keywords.put("not", TokenType.NOT);
-        keywords.put("when", TokenType.WHEN);
-        keywords.put("otherwise", TokenType.OTHERWISE);
-        keywords.put("while", TokenType.WHILE);
-        keywords.put("loop", TokenType.FOR);
-        keywords.put("for", TokenType.FOR);
-        keywords.put("exit", TokenType.EXIT);
-        keywords.put("leave", TokenType.LEAVE);
-        keywords.put("next", TokenType.NEXT);
-        keywords.put("true", TokenType.TRUE);
-        keywords.put("false", TokenType.FALSE);
-        keywords.put("null", TokenType.NULL);
-        keywords.put("define", TokenType.DEFINE);
-        keywords.put("return", TokenType.RETURN);
-        keywords.put("include", TokenType.INCLUDE);
-        keywords.put("import", TokenType.IMPORT);
-    }
-
-    public Lexer(String source) {
-        this.source = source;
+    private static final String[] KEYWORDS = {
+            "set", "store", "print", "say", "show", "and", "or", "not", "when",
+            "otherwise", "while", "loop", "for", "exit", "leave", "next", "true",
+            "false", "null", "define", "return", "include", "import",
+    };
+    private static final TokenType[] KEYWORD_TYPES = {
+            TokenType.STORE, TokenType.STORE, TokenType.PRINT, TokenType.SAY,
+            TokenType.SHOW, TokenType.AND, TokenType.OR, TokenType.NOT,
+            TokenType.WHEN, TokenType.OTHERWISE, TokenType.WHILE, TokenType.FOR,
+            TokenType.FOR, TokenType.EXIT, TokenType.LEAVE, TokenType.NEXT,
+            TokenType.TRUE, TokenType.FALSE, TokenType.NULL, TokenType.DEFINE,
+            TokenType.RETURN, TokenType.INCLUDE, TokenType.IMPORT,
+    };
+
+    // Interned lexemes: an open-addressed table, power-of-two sized and at
+    // most half full. Keywords go in first, with their type; everything
+    // else has a null type.
+    private String[] names = new String[64];
+    private TokenType[] nameTypes = new TokenType[64];
+    private int[] nameHashes = new int[64];
+    private int nameCount = 0;
+
+    public Lexer(CharSequence source) {
+        this.source = source.toString().toCharArray();
+        for (int i = 0; i < KEYWORDS.length; i++) {
+            int slot = intern(KEYWORDS[i].toCharArray(), 0, KEYWORDS[i].length());
+            nameTypes[slot] = KEYWORD_TYPES[i];
+        }
     }
 
     public List<Token> scanTokens() {
+        List<Token> tokens = new ArrayList<>();
+        Token token;
+        do {
+            token = next();
+            tokens.add(token);
+        } while (token.type != TokenType.EOF);
+        return tokens;
+    }
+
+    @Override
+    public Token next() {
         while (!isAtEnd()) {
             start = current;
-            scanToken();
+            Token token = scanToken();
+            if (token != null) {
+                return token;
+            }
         }
-
-        tokens.add(new Token(TokenType.EOF, "", null, line, column));
-        return tokens;
+        return new Token(TokenType.EOF, "", null, line, column);
     }
 
-    private void scanToken() {
+    // null for whitespace, comments and anything reported as an error
+    private Token scanToken() {
         char c = advance();
 
         switch (c) {
-            case '(' -> addToken(TokenType.LEFT_PAREN);
-            case ')' -> addToken(TokenType.RIGHT_PAREN);
-            case '{' -> addToken(TokenType.LEFT_BRACE);
-            case '}' -> addToken(TokenType.RIGHT_BRACE);
-            case '[' -> addToken(TokenType.LEFT_BRACKET);
-            case ']' -> addToken(TokenType.RIGHT_BRACKET);
-            case ',' -> addToken(TokenType.COMMA);
-            case '.' -> addToken(TokenType.DOT);
-            case '?' -> addToken(TokenType.QUESTION);
-            case ':' -> addToken(TokenType.COLON);
-            case '+' -> addToken(match('+') ? TokenType.PLUS_PLUS : TokenType.PLUS);
-            case '-' -> addToken(match('-') ? TokenType.MINUS_MINUS : TokenType.MINUS);
-            case '*' -> addToken(TokenType.STAR);
+            case '(' -> { return token(TokenType.LEFT_PAREN, "("); }
+            case ')' -> { return token(TokenType.RIGHT_PAREN, ")"); }
+            case '{' -> { return token(TokenType.LEFT_BRACE, "{"); }
+            case '}' -> { return token(TokenType.RIGHT_BRACE, "}"); }
+            case '[' -> { return token(TokenType.LEFT_BRACKET, "["); }
+            case ']' -> { return token(TokenType.RIGHT_BRACKET, "]"); }
+            case ',' -> { return token(TokenType.COMMA, ","); }
+            case '.' -> { return token(TokenType.DOT, "."); }
+            case '?' -> { return token(TokenType.QUESTION, "?"); }
+            case ':' -> { return token(TokenType.COLON, ":"); }
+            case '+' -> {
+                return match('+') ? token(TokenType.PLUS_PLUS, "++") : token(TokenType.PLUS, "+");
+            }
+            case '-' -> {
+                return match('-') ? token(TokenType.MINUS_MINUS, "--") : token(TokenType.MINUS, "-");
+            }
+            case '*' -> { return token(TokenType.STAR, "*"); }
             case '/' -> {
                 if (match('/')) {
                     // Comment: ignore until end of line
                     while (peek() != '\n' && !isAtEnd())
                         advance();
-                } else {
-                    addToken(TokenType.SLASH);
+                    return null;
                 }
+                return token(TokenType.SLASH, "/");
+            }
+            case ';' -> { return token(TokenType.SEMICOLON, ";"); }
+            case '@' -> { return token(TokenType.AT, "@"); }
+            case '!' -> {
+                return match('=') ? token(TokenType.BANG_EQUAL, "!=") : token(TokenType.BANG, "!");
+            }
+            case '=' -> {
+                return match('=') ? token(TokenType.EQUAL_EQUAL, "==") : token(TokenType.EQUAL, "=");
+            }
+            case '>' -> {
+                return match('=') ? token(TokenType.GREATER_EQUAL, ">=") : token(TokenType.GREATER, ">");
+            }
+            case '<' -> {
+                return match('=') ? token(TokenType.LESS_EQUAL, "<=") : token(TokenType.LESS, "<");
             }
-            case ';' -> addToken(TokenType.SEMICOLON);
-            case '@' -> addToken(TokenType.AT);
-            case '!' -> addToken(match('=') ? TokenType.BANG_EQUAL : TokenType.BANG);
-            case '=' -> addToken(match('=') ? TokenType.EQUAL_EQUAL : TokenType.EQUAL);
-            case '>' -> addToken(match('=') ? TokenType.GREATER_EQUAL : TokenType.GREATER);
-            case '<' -> addToken(match('=') ? TokenType.LESS_EQUAL : TokenType.LESS);
 
             case '#' -> {
                 // Comment: ignore until end of line
                 while (peek() != '\n' && !isAtEnd())
                     advance();
+                return null;
             }
 
             case '"' -> {
                 if (peek() == '"' && peekNext() == '"') {
                     advance();
                     advance();
-                    multiLineString();
-                } else {
-                    string();
+                    return multiLineString();
                 }
+                return string();
             }
             case ' ', '\r', '\t' -> {
                 // ignore whitespace
+                return null;
             }
             case '\n' -> {
                 line++;
                 column = 1;
-                break;
+                return null;
             }
 
             default -> {
                 if (isDigit(c)) {
-                    number();
-                } else if (isAlpha(c)) {
-                    identifier();
-                } else {
-                    System.err.println(
-                            "Unexpected character '" + c + "' at line " + line);
+                    return number();
+                }
+                if (isAlpha(c)) {
+                    return identifier();
                 }
+                System.err.println(
+                        "Unexpected character '" + c + "' at line " + line);
+                return null;
             }
         }
     }
 
-    private void identifier() {
+    private Token identifier() {
         while (isAlphaNumeric(peek()))
             advance();
 
-        String text = source.substring(start, current);
-        TokenType type = keywords.get(text);
+        int slot = intern(source, start, current);
+        TokenType type = nameTypes[slot];
 
         if (type == null)
             type = TokenType.IDENTIFIER;
-        addToken(type);
+        return token(type, names[slot]);
     }
 
-    private void number() {
-        while (isDigit(peek()))
+    private Token number() {
+        long value = 0;
+        while (isDigit(peek())) {
             advance();
+        }
+        for (int i = start; i < current && value <= Integer.MAX_VALUE; i++) {
+            value = value * 10 + (source[i] - '0');
+        }
+        if (value > Integer.MAX_VALUE) {
+            // fails with the same error it always has
+            Integer.parseInt(new String(source, start, current - start));
+        }
 
-        int value = Integer.parseInt(source.substring(start, current));
-        addToken(TokenType.NUMBER, value);
+        return token(TokenType.NUMBER, name(start, current), (int) value);
     }
 
-    private void string() {
+    private Token string() {
         while (peek() != '"' && !isAtEnd()) {
             if (peek() == '\n')
                 line++;
@@ -157,24 +193,23 @@ public class Lexer {
 
         if (isAtEnd()) {
             System.err.println("Unterminated string at line " + line);
-            return;
+            return null;
         }
 
         advance(); // closing quote
 
-        String value = source.substring(start + 1, current - 1);
-        addToken(TokenType.STRING, value);
+        String value = name(start + 1, current - 1);
+        return token(TokenType.STRING, name(start, current), value);
     }
 
-    private void multiLineString() {
+    private Token multiLineString() {
         while (!isAtEnd()) {
             if (peek() == '"' && peekNext() == '"' && peekThird() == '"') {
                 advance();
                 advance();
                 advance();
-                String value = source.substring(start + 3, current - 3);
-                addToken(TokenType.STRING, value);
-                return;
+                String value = name(start + 3, current - 3);
+                return token(TokenType.STRING, name(start, current), value);
             }
             if (peek() == '\n') {
                 line++;
@@ -184,12 +219,84 @@ public class Lexer {
         }
 
         System.err.println("Unterminated multi-line string at line " + line);
+        return null;
     }
 
+    // ---------------- INTERNING ----------------
+
+    // the interned String for source[from, to)
+    private String name(int from, int to) {
+        int slot = intern(source, from, to); // may replace 'names'
+        return names[slot];
+    }
+
+    // slot of chars[from, to) in the table, adding it if it is new
+    private int intern(char[] chars, int from, int to) {
+        int hash = 0;
+        for (int i = from; i < to; i++) {
+            hash = 31 * hash + chars[i];
+        }
+
+        int mask = names.length - 1;
+        int slot = hash & mask;
+        while (names[slot] != null) {
+            if (nameHashes[slot] == hash && sameChars(names[slot], chars, from, to)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        names[slot] = new String(chars, from, to - from);
+        nameHashes[slot] = hash;
+        if (++nameCount * 2 > names.length) {
+            growNames();
+            return intern(chars, from, to);
+        }
+        return slot;
+    }
+
+    private static boolean sameChars(String name, char[] chars, int from, int to) {
+        if (name.length() != to - from) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != chars[from + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void growNames() {
+        String[] oldNames = names;
+        TokenType[] oldTypes = nameTypes;
+        int[] oldHashes = nameHashes;
+
+        names = new String[oldNames.length * 2];
+        nameTypes = new TokenType[names.length];
+        nameHashes = new int[names.length];
+
+        int mask = names.length - 1;
+        for (int i = 0; i < oldNames.length; i++) {
+            if (oldNames[i] == null) {
+                continue;
+            }
+            int slot = oldHashes[i] & mask;
+            while (names[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            names[slot] = oldNames[i];
+            nameTypes[slot] = oldTypes[i];
+            nameHashes[slot] = oldHashes[i];
+        }
+    }
+
+    // ---------------- HELPERS ----------------
+
     private boolean match(char expected) {
         if (isAtEnd())
             return false;
-        if (source.charAt(current) != expected)
+        if (source[current] != expected)
             return false;
         current++;
         return true;
@@ -198,38 +305,37 @@ public class Lexer {
     private char peek() {
         if (isAtEnd())
             return '\0';
-        return source.charAt(current);
+        return source[current];
     }
 
     private char peekNext() {
-        if (current + 1 >= source.length())
+        if (current + 1 >= source.length)
             return '\0';
-        return source.charAt(current + 1);
+        return source[current + 1];
     }
 
     private char peekThird() {
-        if (current + 2 >= source.length())
+        if (current + 2 >= source.length)
             return '\0';
-        return source.charAt(current + 2);
+        return source[current + 2];
     }
 
     private boolean isAtEnd() {
-        return current >= source.length();
+        return current >= source.length;
     }
 
     private char advance() {
         current++;
         column++;
-        return source.charAt(current - 1);
+        return source[current - 1];
     }
 
-    private void addToken(TokenType type) {
-        addToken(type, null);
+    private Token token(TokenType type, String lexeme) {
+        return token(type, lexeme, null);
     }
 
-    private void addToken(TokenType type, Object literal) {
-        String text = source.substring(start, current);
-        tokens.add(new Token(type, text, literal, line, column - text.length()));
+    private Token token(TokenType type, String lexeme, Object literal) {
+        return new Token(type, lexeme, literal, line, column - (current - start));
     }
 
     private boolean isDigit(char c) {
@@ -0,0 +1,7 @@
+package com.simpleflow.lang.lexer;
+
+// Tokens handed out one at a time, ending with EOF. Once EOF has been
+// returned it is returned again on every later call.
+public interface TokenStream {
+    Token next();
+}
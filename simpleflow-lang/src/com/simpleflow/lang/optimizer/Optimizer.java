@@ -0,0 +1,266 @@
+package com.simpleflow.lang.optimizer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.simpleflow.lang.ast.Expr;
+import com.simpleflow.lang.ast.Stmt;
+import com.simpleflow.lang.interpreter.Values;
+import com.simpleflow.lang.lexer.TokenType;
+
+// Rewrites a freshly parsed AST before it is resolved: folds operators whose
+// operands are all literals, drops branches whose condition is a literal and
+// drops statements that follow a return, leave, next or exit.
+//
+// An operator is only folded when evaluating it cannot fail. Anything that
+// would raise a runtime error (type errors, division by zero) is left in
+// place, so it still fails when, and only if, it is reached. Dropping a
+// variable's only 'store' is safe because a local that was never stored
+// already falls through to the global of the same name.
+public class Optimizer implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+
+    // ---------------- ENTRY ----------------
+
+    public List<Stmt> optimize(List<Stmt> statements) {
+        List<Stmt> out = new ArrayList<>(statements.size());
+        for (Stmt stmt : statements) {
+            Stmt optimized = optimize(stmt);
+            if (optimized == null) {
+                continue;
+            }
+            out.add(optimized);
+            if (terminates(optimized)) {
+                break; // the rest of this list can never run
+            }
+        }
+        return out;
+    }
+
+    // null when the statement can be dropped
+    private Stmt optimize(Stmt stmt) {
+        return stmt.accept(this);
+    }
+
+    // for places that need a statement even when nothing is left
+    private Stmt optimizeOrEmpty(Stmt stmt) {
+        Stmt optimized = optimize(stmt);
+        return optimized != null ? optimized : new Stmt.Block(new ArrayList<>());
+    }
+
+    private Expr optimize(Expr expr) {
+        return expr.accept(this);
+    }
+
+    private static boolean terminates(Stmt stmt) {
+        return stmt instanceof Stmt.Return
+                || stmt instanceof Stmt.Leave
+                || stmt instanceof Stmt.Next
+                || stmt instanceof Stmt.Exit;
+    }
+
+    private static boolean isLiteral(Expr expr) {
+        return expr instanceof Expr.Literal;
+    }
+
+    private static Object valueOf(Expr expr) {
+        return ((Expr.Literal) expr).value;
+    }
+
+    // ---------------- STATEMENTS ----------------
+
+    @Override
+    public Stmt visitPutStmt(Stmt.Put stmt) {
+        return new Stmt.Put(stmt.name, optimize(stmt.initializer));
+    }
+
+    @Override
+    public Stmt visitAssignStmt(Stmt.Assign stmt) {
+        return new Stmt.Assign(stmt.name, optimize(stmt.value));
+    }
+
+    @Override
+    public Stmt visitIndexAssignStmt(Stmt.IndexAssign stmt) {
+        return new Stmt.IndexAssign(optimize(stmt.target), optimize(stmt.index), optimize(stmt.value));
+    }
+
+    @Override
+    public Stmt visitIncDecStmt(Stmt.IncDec stmt) {
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitPrintStmt(Stmt.Print stmt) {
+        return new Stmt.Print(optimize(stmt.expression));
+    }
+
+    @Override
+    public Stmt visitPrintInlineStmt(Stmt.PrintInline stmt) {
+        return new Stmt.PrintInline(optimize(stmt.expression));
+    }
+
+    @Override
+    public Stmt visitExpressionStmt(Stmt.Expression stmt) {
+        Expr expression = optimize(stmt.expression);
+        if (isLiteral(expression)) {
+            return null; // evaluating a literal does nothing
+        }
+        return new Stmt.Expression(expression);
+    }
+
+    @Override
+    public Stmt visitBlockStmt(Stmt.Block stmt) {
+        return new Stmt.Block(optimize(stmt.statements));
+    }
+
+    @Override
+    public Stmt visitIfStmt(Stmt.If stmt) {
+        Expr condition = optimize(stmt.condition);
+
+        if (isLiteral(condition)) {
+            if (Values.isTruthy(valueOf(condition))) {
+                return optimize(stmt.thenBranch);
+            }
+            return stmt.elseBranch != null ? optimize(stmt.elseBranch) : null;
+        }
+
+        Stmt elseBranch = stmt.elseBranch != null ? optimize(stmt.elseBranch) : null;
+        return new Stmt.If(condition, optimizeOrEmpty(stmt.thenBranch), elseBranch);
+    }
+
+    @Override
+    public Stmt visitWhileStmt(Stmt.While stmt) {
+        Expr condition = optimize(stmt.condition);
+        if (isLiteral(condition) && !Values.isTruthy(valueOf(condition))) {
+            return null;
+        }
+        return new Stmt.While(condition, optimizeOrEmpty(stmt.body));
+    }
+
+    @Override
+    public Stmt visitFunctionStmt(Stmt.Function stmt) {
+        return new Stmt.Function(stmt.name, stmt.params, optimize(stmt.body));
+    }
+
+    @Override
+    public Stmt visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.value == null) {
+            return stmt;
+        }
+        return new Stmt.Return(stmt.keyword, optimize(stmt.value));
+    }
+
+    @Override
+    public Stmt visitExitStmt(Stmt.Exit stmt) {
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitLeaveStmt(Stmt.Leave stmt) {
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitNextStmt(Stmt.Next stmt) {
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitIncludeStmt(Stmt.Include stmt) {
+        return stmt;
+    }
+
+    // ---------------- EXPRESSIONS ----------------
+
+    @Override
+    public Expr visitBinaryExpr(Expr.Binary expr) {
+        Expr left = optimize(expr.left);
+        Expr right = optimize(expr.right);
+
+        if (isLiteral(left) && isLiteral(right)) {
+            try {
+                Object value = Values.binary(expr.operator.type, valueOf(left), valueOf(right));
+                return new Expr.Literal(Values.flat(value));
+            } catch (RuntimeException e) {
+                // fails at runtime too; leave it to report the error there
+            }
+        }
+        return new Expr.Binary(left, expr.operator, right);
+    }
+
+    @Override
+    public Expr visitLogicalExpr(Expr.Logical expr) {
+        Expr left = optimize(expr.left);
+        Expr right = optimize(expr.right);
+
+        if (isLiteral(left)) {
+            boolean truthy = Values.isTruthy(valueOf(left));
+            if (expr.operator.type == TokenType.OR ? truthy : !truthy) {
+                return new Expr.Literal(truthy); // the right side never runs
+            }
+            if (isLiteral(right)) {
+                return new Expr.Literal(Values.isTruthy(valueOf(right)));
+            }
+        }
+        return new Expr.Logical(left, expr.operator, right);
+    }
+
+    @Override
+    public Expr visitUnaryExpr(Expr.Unary expr) {
+        Expr right = optimize(expr.right);
+
+        if (isLiteral(right)) {
+            if (expr.operator.type == TokenType.NOT) {
+                return new Expr.Literal(!Values.isTruthy(valueOf(right)));
+            }
+            if (expr.operator.type == TokenType.MINUS && valueOf(right) instanceof Integer) {
+                return new Expr.Literal(Values.negate(valueOf(right)));
+            }
+        }
+        return new Expr.Unary(expr.operator, right);
+    }
+
+    @Override
+    public Expr visitTernaryExpr(Expr.Ternary expr) {
+        Expr condition = optimize(expr.condition);
+
+        if (isLiteral(condition)) {
+            return Values.isTruthy(valueOf(condition))
+                    ? optimize(expr.thenBranch)
+                    : optimize(expr.elseBranch);
+        }
+        return new Expr.Ternary(condition, optimize(expr.thenBranch), optimize(expr.elseBranch));
+    }
+
+    @Override
+    public Expr visitCellLiteralExpr(Expr.CellLiteral expr) {
+        List<Expr> elements = new ArrayList<>(expr.elements.size());
+        for (Expr element : expr.elements) {
+            elements.add(optimize(element));
+        }
+        return new Expr.CellLiteral(elements);
+    }
+
+    @Override
+    public Expr visitIndexExpr(Expr.Index expr) {
+        return new Expr.Index(optimize(expr.target), optimize(expr.index));
+    }
+
+    @Override
+    public Expr visitLiteralExpr(Expr.Literal expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitVariableExpr(Expr.Variable expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitCallExpr(Expr.Call expr) {
+        List<Expr> arguments = new ArrayList<>(expr.arguments.size());
+        for (Expr argument : expr.arguments) {
+            arguments.add(optimize(argument));
+        }
+        return new Expr.Call(optimize(expr.callee), expr.paren, arguments);
+    }
+}
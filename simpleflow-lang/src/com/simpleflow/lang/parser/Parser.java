@@ -1,22 +1,36 @@
 package com.simpleflow.lang.parser;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import com.simpleflow.lang.ast.Expr;
 import com.simpleflow.lang.ast.Stmt;
 import com.simpleflow.lang.lexer.Token;
+import com.simpleflow.lang.lexer.TokenStream;
 import com.simpleflow.lang.lexer.TokenType;
 
 public class Parser {
 
-    private final List<Token> tokens;
+    private final TokenStream tokens;
+
+    // Tokens pulled from 'tokens' so far and still needed: window[i] is token
+    // number 'first + i'. Lookahead may run far ahead of 'current'; anything
+    // before previous() is dropped once the window fills up.
+    private Token[] window = new Token[64];
+    private int first = 0;
+    private int pulled = 0;
     private int current = 0;
 
-    public Parser(List<Token> tokens) {
+    // pulls tokens from the lexer as it goes
+    public Parser(TokenStream tokens) {
         this.tokens = tokens;
     }
 
+    public Parser(List<Token> tokens) {
+        this(tokens.iterator()::next);
+    }
+
     // ---------------- ENTRY ----------------
 
     public List<Stmt> parse() {
@@ -29,6 +43,12 @@ public class Parser {
         return statements;
     }
 
+    // The next top-level statement, or null at the end of the input. Only
+    // the tokens that statement needs are pulled from the lexer.
+    public Stmt parseNext() {
+        return isAtEnd() ? null : statement();
+    }
+
     // ---------------- STATEMENTS ----------------
 
     private Stmt statement() {
@@ -468,18 +488,16 @@ public class Parser {
 
     private boolean isIndexAssignment() {
         if (!check(TokenType.IDENTIFIER)) return false;
-        if (current + 1 >= tokens.size()) return false;
-        if (tokens.get(current + 1).type != TokenType.LEFT_BRACKET) return false;
+        if (token(current + 1).type != TokenType.LEFT_BRACKET) return false;
 
         int depth = 0;
-        for (int i = current + 1; i < tokens.size(); i++) {
-            TokenType type = tokens.get(i).type;
+        for (int i = current + 1; ; i++) {
+            TokenType type = token(i).type;
             if (type == TokenType.LEFT_BRACKET) depth++;
             else if (type == TokenType.RIGHT_BRACKET) {
                 depth--;
                 if (depth == 0) {
-                    if (i + 1 >= tokens.size()) return false;
-                    TokenType next = tokens.get(i + 1).type;
+                    TokenType next = token(i + 1).type;
                     if (next == TokenType.EQUAL) return true;
                     if (next == TokenType.LEFT_BRACKET) {
                         continue;
@@ -490,13 +508,11 @@ public class Parser {
                 return false;
             }
         }
-        return false;
     }
 
     private boolean isIncDecStatement() {
         if (!check(TokenType.IDENTIFIER)) return false;
-        if (current + 1 >= tokens.size()) return false;
-        TokenType next = tokens.get(current + 1).type;
+        TokenType next = token(current + 1).type;
         return next == TokenType.PLUS_PLUS || next == TokenType.MINUS_MINUS;
     }
 
@@ -523,8 +539,7 @@ public class Parser {
     }
 
     private boolean checkNext(TokenType type) {
-        if (current + 1 >= tokens.size()) return false;
-        return tokens.get(current + 1).type == type;
+        return token(current + 1).type == type;
     }
 
     private Token advance() {
@@ -537,11 +552,37 @@ public class Parser {
     }
 
     private Token peek() {
-        return tokens.get(current);
+        return token(current);
     }
 
     private Token previous() {
-        return tokens.get(current - 1);
+        return token(current - 1);
+    }
+
+    // token number 'index', pulling up to it if needed; past the end it is EOF
+    private Token token(int index) {
+        while (index >= pulled) {
+            if (pulled > 0 && window[pulled - 1 - first].type == TokenType.EOF) {
+                return window[pulled - 1 - first];
+            }
+            pull();
+        }
+        return window[index - first];
+    }
+
+    private void pull() {
+        if (pulled - first == window.length) {
+            int keep = Math.max(current - 1, first); // previous() stays reachable
+            int drop = keep - first;
+            if (drop >= window.length / 2) {
+                System.arraycopy(window, drop, window, 0, window.length - drop);
+                first = keep;
+            } else {
+                window = Arrays.copyOf(window, window.length * 2);
+            }
+        }
+        window[pulled - first] = tokens.next();
+        pulled++;
     }
 
     private ParseError error(Token token, String message) {
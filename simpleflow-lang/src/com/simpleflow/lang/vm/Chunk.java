@@ -0,0 +1,24 @@
+package com.simpleflow.lang.vm;
+
+public final class Chunk {
+    public final String name;
+    final int arity;
+    final int frameSize;
+    final boolean captures; // see Stmt.Function.captures
+    final int[] code;
+    final Object[] constants;
+
+    // Inline cache per call site: the chunk or builtin last checked there by
+    // CHECK_CALL. Chunks are compiled for one run, so this is never shared.
+    final Object[] checked;
+
+    Chunk(String name, int arity, int frameSize, boolean captures, int[] code, Object[] constants, int callSites) {
+        this.name = name;
+        this.arity = arity;
+        this.frameSize = frameSize;
+        this.captures = captures;
+        this.code = code;
+        this.constants = constants;
+        this.checked = new Object[callSites];
+    }
+}
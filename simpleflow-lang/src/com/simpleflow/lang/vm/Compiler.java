@@ -0,0 +1,454 @@
+package com.simpleflow.lang.vm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.simpleflow.lang.ast.Binding;
+import com.simpleflow.lang.ast.Expr;
+import com.simpleflow.lang.ast.Stmt;
+import com.simpleflow.lang.lexer.TokenType;
+
+// Turns a resolved AST into bytecode. Variable slots, scope sizes and frame
+// sizes all come from the Resolver, so it must run over the statements first.
+public class Compiler implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+
+    private int[] code = new int[64];
+    private int count = 0;
+    private final List<Object> constants = new ArrayList<>();
+    private int callSites = 0;
+
+    // Innermost loop last: where 'next' jumps to, and the 'leave' jumps to patch.
+    private final List<Integer> loopStarts = new ArrayList<>();
+    private final List<List<Integer>> loopExits = new ArrayList<>();
+
+    // 'return f(...)' becomes a tail call only inside a function body
+    private final boolean inFunction;
+
+    private Compiler(boolean inFunction) {
+        this.inFunction = inFunction;
+    }
+
+    // ---------------- ENTRY ----------------
+
+    public static Chunk compile(List<Stmt> statements) {
+        Compiler compiler = new Compiler(false);
+        compiler.compileAll(statements);
+        compiler.emit(OpCode.EXIT);
+        return compiler.finish("<script>", 0, 0, true);
+    }
+
+    private static Chunk compileFunction(Stmt.Function function) {
+        Compiler compiler = new Compiler(true);
+        compiler.compileAll(function.body);
+        compiler.emit(OpCode.NULL);
+        compiler.emit(OpCode.RETURN);
+        return compiler.finish(function.name.lexeme, function.params.size(), function.frameSize, function.captures);
+    }
+
+    private Chunk finish(String name, int arity, int frameSize, boolean captures) {
+        return new Chunk(name, arity, frameSize, captures, Arrays.copyOf(code, count), constants.toArray(), callSites);
+    }
+
+    private void compileAll(List<Stmt> statements) {
+        for (Stmt stmt : statements) {
+            compile(stmt);
+        }
+    }
+
+    private void compile(Stmt stmt) {
+        stmt.accept(this);
+    }
+
+    private void compile(Expr expr) {
+        expr.accept(this);
+    }
+
+    // ---------------- EMIT HELPERS ----------------
+
+    private void emit(int value) {
+        if (count == code.length) {
+            code = Arrays.copyOf(code, count * 2);
+        }
+        code[count++] = value;
+    }
+
+    private void emit(int op, int operand) {
+        emit(op);
+        emit(operand);
+    }
+
+    private int emitJump(int op) {
+        emit(op, -1);
+        return count - 1;
+    }
+
+    private void patchJump(int operand) {
+        code[operand] = count;
+    }
+
+    // Compiles 'condition' and a jump, still to be patched, taken when it is
+    // false. A comparison goes into the jump itself, so its Boolean is never made.
+    private int emitJumpIfFalse(Expr condition) {
+        if (condition instanceof Expr.Binary binary) {
+            int op = switch (binary.operator.type) {
+                case LESS -> OpCode.JUMP_IF_NOT_LESS;
+                case LESS_EQUAL -> OpCode.JUMP_IF_NOT_LESS_EQUAL;
+                case GREATER -> OpCode.JUMP_IF_NOT_GREATER;
+                case GREATER_EQUAL -> OpCode.JUMP_IF_NOT_GREATER_EQUAL;
+                case EQUAL_EQUAL -> OpCode.JUMP_IF_NOT_EQUAL;
+                case BANG_EQUAL -> OpCode.JUMP_IF_EQUAL;
+                default -> -1;
+            };
+            if (op >= 0) {
+                compile(binary.left);
+                compile(binary.right);
+                return emitJump(op);
+            }
+        }
+        compile(condition);
+        return emitJump(OpCode.JUMP_IF_FALSE);
+    }
+
+    private int constant(Object value) {
+        constants.add(value);
+        return constants.size() - 1;
+    }
+
+    private void emitGet(Binding binding) {
+        if (binding.depths.length == 0) {
+            emit(OpCode.GET_GLOBAL, binding.global);
+        } else if (binding.depths.length == 1 && binding.depths[0] == 0) {
+            emit(OpCode.GET_LOCAL, binding.slots[0]);
+            emit(binding.global);
+        } else {
+            emit(OpCode.GET_VAR, constant(binding));
+        }
+    }
+
+    private void emitSet(Binding binding) {
+        if (binding.depths.length == 0) {
+            emit(OpCode.SET_GLOBAL, binding.global);
+        } else if (binding.depths.length == 1 && binding.depths[0] == 0) {
+            emit(OpCode.SET_LOCAL, binding.slots[0]);
+            emit(binding.global);
+        } else {
+            emit(OpCode.SET_VAR, constant(binding));
+        }
+    }
+
+    private void emitDefine(int slot, int sharedDepth, int sharedSlot) {
+        if (sharedDepth < 0) {
+            emit(OpCode.DEFINE, slot);
+        } else {
+            emit(OpCode.DEFINE_SHARED, slot);
+            emit(sharedDepth);
+            emit(sharedSlot);
+        }
+    }
+
+    // ---------------- STATEMENTS ----------------
+
+    @Override
+    public Void visitPutStmt(Stmt.Put stmt) {
+        compile(stmt.initializer);
+        emitDefine(stmt.slot, stmt.sharedDepth, stmt.sharedSlot);
+        return null;
+    }
+
+    @Override
+    public Void visitAssignStmt(Stmt.Assign stmt) {
+        compile(stmt.value);
+        emitSet(stmt.binding);
+        return null;
+    }
+
+    @Override
+    public Void visitIndexAssignStmt(Stmt.IndexAssign stmt) {
+        compile(stmt.target);
+        emit(OpCode.CHECK_CELL);
+        compile(stmt.index);
+        compile(stmt.value);
+        emit(OpCode.INDEX_SET);
+        return null;
+    }
+
+    @Override
+    public Void visitIncDecStmt(Stmt.IncDec stmt) {
+        Binding binding = stmt.binding;
+        if (binding.depths.length == 0) {
+            emit(OpCode.INC_DEC_GLOBAL, binding.global);
+        } else if (binding.depths.length == 1 && binding.depths[0] == 0) {
+            emit(OpCode.INC_DEC_LOCAL, binding.slots[0]);
+            emit(binding.global);
+        } else {
+            emit(OpCode.INC_DEC, constant(binding));
+        }
+        emit(stmt.operator.type == TokenType.PLUS_PLUS ? 1 : -1);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        compile(stmt.expression);
+        emit(OpCode.PRINT);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintInlineStmt(Stmt.PrintInline stmt) {
+        compile(stmt.expression);
+        emit(OpCode.PRINT_INLINE);
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        compile(stmt.expression);
+        emit(OpCode.POP);
+        return null;
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        if (stmt.scopeSize < 0) {
+            compileAll(stmt.statements);
+            return null;
+        }
+
+        emit(OpCode.PUSH_SCOPE, stmt.scopeSize);
+        compileAll(stmt.statements);
+        emit(OpCode.POP_SCOPE);
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        int elseJump = emitJumpIfFalse(stmt.condition);
+        compile(stmt.thenBranch);
+
+        if (stmt.elseBranch == null) {
+            patchJump(elseJump);
+            return null;
+        }
+
+        int endJump = emitJump(OpCode.JUMP);
+        patchJump(elseJump);
+        compile(stmt.elseBranch);
+        patchJump(endJump);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        int start = count;
+        loopStarts.add(start);
+        loopExits.add(new ArrayList<>());
+
+        int exitJump = emitJumpIfFalse(stmt.condition);
+        compile(stmt.body);
+        emit(OpCode.LOOP, start);
+        patchJump(exitJump);
+
+        loopStarts.remove(loopStarts.size() - 1);
+        for (int jump : loopExits.remove(loopExits.size() - 1)) {
+            patchJump(jump);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        emit(OpCode.CLOSURE, constant(compileFunction(stmt)));
+        emitDefine(stmt.slot, stmt.sharedDepth, stmt.sharedSlot);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        if (inFunction && !stmt.inLoop && stmt.value instanceof Expr.Call call) {
+            compileCall(call, OpCode.TAIL_CALL);
+            emit(OpCode.RETURN); // reached when the callee is a builtin
+            return null;
+        }
+
+        if (stmt.value != null) {
+            compile(stmt.value);
+        } else {
+            emit(OpCode.NULL);
+        }
+        emit(OpCode.RETURN);
+        return null;
+    }
+
+    @Override
+    public Void visitExitStmt(Stmt.Exit stmt) {
+        emit(OpCode.EXIT);
+        return null;
+    }
+
+    @Override
+    public Void visitLeaveStmt(Stmt.Leave stmt) {
+        if (loopExits.isEmpty()) {
+            if (inFunction) {
+                emit(OpCode.UNWIND, 0);
+            } else {
+                emit(OpCode.THROW, constant("leave used outside loop"));
+            }
+            return null;
+        }
+        loopExits.get(loopExits.size() - 1).add(emitJump(OpCode.JUMP));
+        return null;
+    }
+
+    @Override
+    public Void visitNextStmt(Stmt.Next stmt) {
+        if (loopStarts.isEmpty()) {
+            if (inFunction) {
+                emit(OpCode.UNWIND, 1);
+            } else {
+                emit(OpCode.THROW, constant("next used outside loop"));
+            }
+            return null;
+        }
+        emit(OpCode.LOOP, loopStarts.get(loopStarts.size() - 1));
+        return null;
+    }
+
+    @Override
+    public Void visitIncludeStmt(Stmt.Include stmt) {
+        emit(OpCode.INCLUDE, constant(stmt.path));
+        return null;
+    }
+
+    // ---------------- EXPRESSIONS ----------------
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        compile(expr.left);
+        compile(expr.right);
+
+        emit(switch (expr.operator.type) {
+            case PLUS -> OpCode.ADD;
+            case MINUS -> OpCode.SUB;
+            case STAR -> OpCode.MUL;
+            case SLASH -> OpCode.DIV;
+            case GREATER -> OpCode.GREATER;
+            case GREATER_EQUAL -> OpCode.GREATER_EQUAL;
+            case LESS -> OpCode.LESS;
+            case LESS_EQUAL -> OpCode.LESS_EQUAL;
+            case EQUAL_EQUAL -> OpCode.EQUAL;
+            case BANG_EQUAL -> OpCode.NOT_EQUAL;
+            default -> throw new RuntimeException("Unknown operator.");
+        });
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        compile(expr.left);
+
+        boolean isOr = expr.operator.type == TokenType.OR;
+        int shortCircuit = emitJump(isOr ? OpCode.JUMP_IF_TRUE : OpCode.JUMP_IF_FALSE);
+        compile(expr.right);
+        emit(OpCode.TRUTHY);
+        int endJump = emitJump(OpCode.JUMP);
+
+        patchJump(shortCircuit);
+        emit(isOr ? OpCode.TRUE : OpCode.FALSE);
+        patchJump(endJump);
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        compile(expr.right);
+
+        if (expr.operator.type == TokenType.NOT) {
+            emit(OpCode.NOT);
+        } else if (expr.operator.type == TokenType.MINUS) {
+            emit(OpCode.NEGATE);
+        } else {
+            emit(OpCode.THROW, constant("Unknown operator."));
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitTernaryExpr(Expr.Ternary expr) {
+        int elseJump = emitJumpIfFalse(expr.condition);
+        compile(expr.thenBranch);
+        int endJump = emitJump(OpCode.JUMP);
+        patchJump(elseJump);
+        compile(expr.elseBranch);
+        patchJump(endJump);
+        return null;
+    }
+
+    @Override
+    public Void visitCellLiteralExpr(Expr.CellLiteral expr) {
+        for (Expr element : expr.elements) {
+            compile(element);
+        }
+        emit(OpCode.CELL, expr.elements.size());
+        return null;
+    }
+
+    @Override
+    public Void visitIndexExpr(Expr.Index expr) {
+        compile(expr.target);
+        compile(expr.index);
+        emit(OpCode.INDEX);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        if (expr.value == null) {
+            emit(OpCode.NULL);
+        } else if (Boolean.TRUE.equals(expr.value)) {
+            emit(OpCode.TRUE);
+        } else if (Boolean.FALSE.equals(expr.value)) {
+            emit(OpCode.FALSE);
+        } else {
+            emit(OpCode.CONST, constant(expr.value));
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        if (expr.builtin != null) {
+            emit(OpCode.CONST, constant(expr.builtin));
+            return null;
+        }
+        emitGet(expr.binding);
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr) {
+        compileCall(expr, OpCode.CALL);
+
+        // where a 'leave' or 'next' in the callee sends this frame
+        if (loopExits.isEmpty()) {
+            emit(-1);
+            emit(-1);
+        } else {
+            emit(-1);
+            loopExits.get(loopExits.size() - 1).add(count - 1);
+            emit(loopStarts.get(loopStarts.size() - 1));
+        }
+        return null;
+    }
+
+    private void compileCall(Expr.Call expr, int op) {
+        compile(expr.callee);
+        emit(OpCode.CHECK_CALL, expr.arguments.size());
+        emit(callSites++);
+        for (Expr argument : expr.arguments) {
+            compile(argument);
+        }
+        emit(op, expr.arguments.size());
+    }
+}
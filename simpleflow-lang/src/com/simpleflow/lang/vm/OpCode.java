@@ -0,0 +1,78 @@
+package com.simpleflow.lang.vm;
+
+final class OpCode {
+
+    private OpCode() {
+    }
+
+    // ---------------- STACK ----------------
+    static final int CONST = 0;          // k
+    static final int NULL = 1;
+    static final int TRUE = 2;
+    static final int FALSE = 3;
+    static final int POP = 4;
+
+    // ---------------- VARIABLES ----------------
+    static final int GET_GLOBAL = 5;     // global
+    static final int GET_LOCAL = 6;      // slot, global
+    static final int GET_VAR = 7;        // k (Binding)
+    static final int SET_GLOBAL = 8;     // global
+    static final int SET_LOCAL = 9;      // slot, global
+    static final int SET_VAR = 10;       // k (Binding)
+    static final int DEFINE = 11;        // slot
+    static final int DEFINE_SHARED = 12; // slot, depth, slot there when the frame shares blocks
+    static final int INC_DEC = 13;       // k (Binding), delta
+    static final int INC_DEC_LOCAL = 14; // slot, global, delta
+    static final int INC_DEC_GLOBAL = 15; // global, delta
+
+    // ---------------- OPERATORS ----------------
+    static final int ADD = 16;
+    static final int SUB = 17;
+    static final int MUL = 18;
+    static final int DIV = 19;
+    static final int GREATER = 20;
+    static final int GREATER_EQUAL = 21;
+    static final int LESS = 22;
+    static final int LESS_EQUAL = 23;
+    static final int EQUAL = 24;
+    static final int NOT_EQUAL = 25;
+    static final int NOT = 26;
+    static final int NEGATE = 27;
+    static final int TRUTHY = 28;
+
+    // ---------------- CONTROL FLOW ----------------
+    static final int JUMP = 29;          // target, forward
+    static final int LOOP = 30;          // target, backward; spends a step
+    static final int JUMP_IF_FALSE = 31; // target
+    static final int JUMP_IF_TRUE = 32;  // target
+
+    // a comparison and JUMP_IF_FALSE in one: pop two, jump unless the test holds
+    static final int JUMP_IF_NOT_LESS = 33;          // target
+    static final int JUMP_IF_NOT_LESS_EQUAL = 34;    // target
+    static final int JUMP_IF_NOT_GREATER = 35;       // target
+    static final int JUMP_IF_NOT_GREATER_EQUAL = 36; // target
+    static final int JUMP_IF_NOT_EQUAL = 37;         // target
+    static final int JUMP_IF_EQUAL = 38;             // target
+
+    static final int PUSH_SCOPE = 39;    // size
+    static final int POP_SCOPE = 40;
+    static final int CHECK_CALL = 41;    // argc, call site
+    static final int CALL = 42;          // argc, leave target, next target (-1: not in a loop)
+    static final int TAIL_CALL = 43;     // argc; replaces the calling frame
+    static final int RETURN = 44;
+    static final int EXIT = 45;
+    static final int THROW = 46;         // k (message)
+    static final int UNWIND = 47;        // 0 leave, 1 next; to the caller's loop
+
+    // ---------------- STATEMENTS ----------------
+    static final int PRINT = 48;
+    static final int PRINT_INLINE = 49;
+    static final int CLOSURE = 50;       // k (Chunk)
+    static final int INCLUDE = 51;       // k (path)
+
+    // ---------------- CELLS ----------------
+    static final int CELL = 52;          // count
+    static final int INDEX = 53;
+    static final int CHECK_CELL = 54;
+    static final int INDEX_SET = 55;
+}
@@ -0,0 +1,715 @@
+package com.simpleflow.lang.vm;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import com.simpleflow.lang.ast.Binding;
+import com.simpleflow.lang.ast.Stmt;
+import com.simpleflow.lang.interpreter.Budget;
+import com.simpleflow.lang.interpreter.Builtins;
+import com.simpleflow.lang.interpreter.Callable;
+import com.simpleflow.lang.interpreter.Cell;
+import com.simpleflow.lang.interpreter.Engine;
+import com.simpleflow.lang.interpreter.Environment;
+import com.simpleflow.lang.interpreter.Execution;
+import com.simpleflow.lang.interpreter.ExitSignal;
+import com.simpleflow.lang.interpreter.Footprint;
+import com.simpleflow.lang.interpreter.LoopSignal;
+import com.simpleflow.lang.interpreter.Program;
+import com.simpleflow.lang.interpreter.Resolver;
+import com.simpleflow.lang.interpreter.Rope;
+import com.simpleflow.lang.interpreter.Values;
+import com.simpleflow.lang.lexer.Lexer;
+import com.simpleflow.lang.lexer.TokenType;
+import com.simpleflow.lang.optimizer.Optimizer;
+import com.simpleflow.lang.parser.ParseError;
+import com.simpleflow.lang.parser.Parser;
+
+public class VM implements Engine {
+
+    private final Resolver resolver = new Resolver();
+    private final Environment globals = new Environment(0);
+    private Appendable out;
+    private Budget budget;
+    private Execution execution = new Execution();
+
+    // the globals as they were right after the builtins were defined
+    private final Object[] builtins;
+
+    private Object[] stack = new Object[256];
+    private int sp = 0;
+
+    // Call frames. The running frame's ip lives in a local of run() and is
+    // only written back here when another frame is pushed. Its environment
+    // is a local too, but is written back whenever it changes, so that
+    // liveBytes() sees block scopes.
+    private Chunk[] frameChunks = new Chunk[64];
+    private int[] frameIps = new int[64];
+    private Environment[] frameEnvs = new Environment[64];
+    private int frameCount = 0;
+
+    // Per frame: the stack height it started at, and the loop targets of the
+    // call it is making (-1 when that call is not in a loop), for UNWIND.
+    private int[] frameBases = new int[64];
+    private int[] frameLeaves = new int[64];
+    private int[] frameNexts = new int[64];
+
+    // whether the frame's function was called from a loop, for DEFINE_SHARED
+    private boolean[] frameShared = new boolean[64];
+
+    // ---------------- ENTRY ----------------
+
+    public VM() {
+        this(System.out);
+    }
+
+    // show/print write to 'out', so each VM can have its own sink
+    public VM(Appendable out) {
+        this(out, Budget.unlimited());
+    }
+
+    // backward jumps and calls are charged to 'budget', which stops the run when spent
+    public VM(Appendable out, Budget budget) {
+        this.out = out;
+        this.budget = budget;
+        budget.countLiveWith(this::liveBytes);
+        for (Map.Entry<String, Callable> builtin : Builtins.all().entrySet()) {
+            int slot = resolver.globalSlot(builtin.getKey());
+            globals.ensureCapacity(slot + 1);
+            globals.define(slot, builtin.getValue());
+        }
+        this.builtins = globals.snapshot(resolver.globalCount());
+    }
+
+    @Override
+    public void reset(Appendable out, Budget budget) {
+        this.out = out;
+        this.budget = budget;
+        budget.countLiveWith(this::liveBytes);
+        this.execution = new Execution();
+        resolver.reset(builtins.length);
+        globals.restore(builtins);
+        Arrays.fill(stack, null);
+        sp = 0;
+        Arrays.fill(frameChunks, null);
+        Arrays.fill(frameEnvs, null);
+        frameCount = 0;
+    }
+
+    // what the run can still reach, for the budget's memory limit
+    private long liveBytes() {
+        Footprint count = new Footprint();
+        count.add(globals);
+        for (int i = 0; i < sp; i++) {
+            count.add(stack[i]);
+        }
+        for (int i = 0; i < frameCount; i++) {
+            count.add(frameEnvs[i]);
+        }
+        return count.total();
+    }
+
+    public void interpret(List<Stmt> statements) {
+        resolver.resolve(statements);
+        globals.ensureCapacity(resolver.globalCount());
+        execute(Compiler.compile(statements));
+    }
+
+    // Runs a program resolved ahead of time. Its globals have to line up
+    // with this VM's, which always holds for a fresh VM.
+    @Override
+    public void interpret(Program program) {
+        resolver.adopt(program.globals);
+        globals.ensureCapacity(resolver.globalCount());
+        execute(Compiler.compile(program.statements));
+    }
+
+    public String interpretAndReturn(List<Stmt> statements) {
+        return captureOutput(() -> interpret(statements));
+    }
+
+    public String interpretAndReturn(Program program) {
+        return captureOutput(() -> interpret(program));
+    }
+
+    private String captureOutput(Runnable run) {
+
+        Appendable originalOut = out;
+        StringBuilder buffer = new StringBuilder();
+        out = buffer;
+
+        try {
+            run.run();
+        } finally {
+            out = originalOut;
+        }
+
+        return buffer
+                .toString()
+                .replace("\r\n", "\n")
+                .trim();
+    }
+
+    Object invoke(VmFunction function, List<Object> arguments) {
+        budget.step();
+
+        Environment env = new Environment(function.closure, function.chunk.frameSize);
+        for (int i = 0; i < arguments.size(); i++) {
+            env.define(i, arguments.get(i));
+        }
+
+        int base = frameCount;
+        int stackBase = sp;
+        pushFrame(function.chunk, env);
+        try {
+            return run(base);
+        } finally {
+            popFrames(base);
+            sp = stackBase;
+        }
+    }
+
+    private void execute(Chunk script) {
+        int base = frameCount;
+        int stackBase = sp;
+        pushFrame(script, globals);
+        try {
+            run(base);
+        } catch (ExitSignal ignored) {
+            // program stopped
+        } catch (LoopSignal signal) {
+            throw new RuntimeException(
+                    signal == LoopSignal.LEAVE ? "leave used outside loop" : "next used outside loop");
+        } catch (StackOverflowError e) {
+            // builtins and includes re-enter run(), so the Java stack can still run out
+            throw new RuntimeException("Stack overflow.");
+        } finally {
+            popFrames(base);
+            sp = stackBase;
+        }
+    }
+
+    private void include(String path) {
+        try {
+            String source = Files.readString(Path.of(path));
+            List<Stmt> statements;
+            try {
+                statements = new Optimizer().optimize(new Parser(new Lexer(source)).parse());
+            } catch (ParseError e) {
+                throw new RuntimeException(
+                        "Parse error at line " + e.line + ", column " + e.column + ": " + e.getMessage());
+            }
+            interpret(statements);
+        } catch (Exception e) {
+            throw new RuntimeException("include failed: " + e.getMessage());
+        }
+    }
+
+    // ---------------- DISPATCH LOOP ----------------
+
+    private Object run(int base) {
+        Chunk chunk = frameChunks[frameCount - 1];
+        int[] code = chunk.code;
+        Object[] constants = chunk.constants;
+        Environment env = frameEnvs[frameCount - 1];
+        int ip = 0;
+
+        while (true) {
+            switch (code[ip++]) {
+                case OpCode.CONST -> push(constants[code[ip++]]);
+                case OpCode.NULL -> push(null);
+                case OpCode.TRUE -> push(Boolean.TRUE);
+                case OpCode.FALSE -> push(Boolean.FALSE);
+                case OpCode.POP -> sp--;
+
+                case OpCode.GET_GLOBAL -> push(global(code[ip++]));
+                case OpCode.GET_LOCAL -> {
+                    Object value = env.get(code[ip++]);
+                    int global = code[ip++];
+                    push(value != Environment.UNDEFINED ? value : global(global));
+                }
+                case OpCode.GET_VAR -> push(lookUp(env, (Binding) constants[code[ip++]]));
+                case OpCode.SET_GLOBAL -> setGlobal(code[ip++], pop());
+                case OpCode.SET_LOCAL -> {
+                    int slot = code[ip++];
+                    int global = code[ip++];
+                    Object value = pop();
+                    if (env.get(slot) != Environment.UNDEFINED) {
+                        env.define(slot, value);
+                    } else {
+                        setGlobal(global, value);
+                    }
+                }
+                case OpCode.SET_VAR -> assign(env, (Binding) constants[code[ip++]], pop());
+                case OpCode.DEFINE -> env.define(code[ip++], pop());
+                case OpCode.DEFINE_SHARED -> {
+                    int slot = code[ip++];
+                    int depth = code[ip++];
+                    int shared = code[ip++];
+                    if (frameShared[frameCount - 1]) {
+                        env.ancestor(depth).define(shared, pop());
+                    } else {
+                        env.define(slot, pop());
+                    }
+                }
+                case OpCode.INC_DEC -> {
+                    Binding binding = (Binding) constants[code[ip++]];
+                    int delta = code[ip++];
+                    if (!(lookUp(env, binding) instanceof Integer i)) {
+                        throw new RuntimeException("Can only apply ++/-- to numbers.");
+                    }
+                    assign(env, binding, i + delta);
+                }
+                case OpCode.INC_DEC_GLOBAL -> {
+                    int global = code[ip++];
+                    int delta = code[ip++];
+                    if (!(global(global) instanceof Integer i)) {
+                        throw new RuntimeException("Can only apply ++/-- to numbers.");
+                    }
+                    globals.define(global, i + delta);
+                }
+                case OpCode.INC_DEC_LOCAL -> {
+                    int slot = code[ip++];
+                    int global = code[ip++];
+                    int delta = code[ip++];
+                    Object value = env.get(slot);
+                    boolean local = value != Environment.UNDEFINED;
+                    if (!((local ? value : global(global)) instanceof Integer i)) {
+                        throw new RuntimeException("Can only apply ++/-- to numbers.");
+                    }
+                    if (local) {
+                        env.define(slot, i + delta);
+                    } else {
+                        setGlobal(global, i + delta);
+                    }
+                }
+
+                case OpCode.ADD -> {
+                    Object right = pop();
+                    Object left = pop();
+                    if (left instanceof Integer l && right instanceof Integer r) {
+                        push(l + r);
+                    } else {
+                        Object value = Values.binary(TokenType.PLUS, left, right);
+                        budget.allocate(Rope.concatBytes(left, value));
+                        push(value);
+                    }
+                }
+                case OpCode.SUB -> {
+                    Object right = pop();
+                    Object left = pop();
+                    if (left instanceof Integer l && right instanceof Integer r) {
+                        push(l - r);
+                    } else {
+                        push(Values.binary(TokenType.MINUS, left, right));
+                    }
+                }
+                case OpCode.MUL -> {
+                    Object right = pop();
+                    Object left = pop();
+                    if (left instanceof Integer l && right instanceof Integer r) {
+                        push(l * r);
+                    } else {
+                        push(Values.binary(TokenType.STAR, left, right));
+                    }
+                }
+                case OpCode.DIV -> {
+                    Object right = pop();
+                    Object left = pop();
+                    push(Values.binary(TokenType.SLASH, left, right));
+                }
+                case OpCode.GREATER -> {
+                    Object right = pop();
+                    Object left = pop();
+                    if (left instanceof Integer l && right instanceof Integer r) {
+                        push(l > r);
+                    } else {
+                        push(Values.binary(TokenType.GREATER, left, right));
+                    }
+                }
+                case OpCode.GREATER_EQUAL -> {
+                    Object right = pop();
+                    Object left = pop();
+                    if (left instanceof Integer l && right instanceof Integer r) {
+                        push(l >= r);
+                    } else {
+                        push(Values.binary(TokenType.GREATER_EQUAL, left, right));
+                    }
+                }
+                case OpCode.LESS -> {
+                    Object right = pop();
+                    Object left = pop();
+                    if (left instanceof Integer l && right instanceof Integer r) {
+                        push(l < r);
+                    } else {
+                        push(Values.binary(TokenType.LESS, left, right));
+                    }
+                }
+                case OpCode.LESS_EQUAL -> {
+                    Object right = pop();
+                    Object left = pop();
+                    if (left instanceof Integer l && right instanceof Integer r) {
+                        push(l <= r);
+                    } else {
+                        push(Values.binary(TokenType.LESS_EQUAL, left, right));
+                    }
+                }
+                case OpCode.EQUAL -> {
+                    Object right = pop();
+                    push(Values.equal(pop(), right));
+                }
+                case OpCode.NOT_EQUAL -> {
+                    Object right = pop();
+                    push(!Values.equal(pop(), right));
+                }
+                case OpCode.NOT -> push(!Values.isTruthy(pop()));
+                case OpCode.NEGATE -> push(Values.negate(pop()));
+                case OpCode.TRUTHY -> push(Values.isTruthy(pop()));
+
+                case OpCode.JUMP -> ip = code[ip];
+                case OpCode.LOOP -> {
+                    budget.step();
+                    ip = code[ip];
+                }
+                case OpCode.JUMP_IF_FALSE -> {
+                    int target = code[ip++];
+                    if (!Values.isTruthy(pop())) {
+                        ip = target;
+                    }
+                }
+                case OpCode.JUMP_IF_TRUE -> {
+                    int target = code[ip++];
+                    if (Values.isTruthy(pop())) {
+                        ip = target;
+                    }
+                }
+                case OpCode.JUMP_IF_NOT_LESS -> {
+                    int target = code[ip++];
+                    Object right = pop();
+                    Object left = pop();
+                    if (left instanceof Integer l && right instanceof Integer r
+                            ? l >= r : !test(TokenType.LESS, left, right)) {
+                        ip = target;
+                    }
+                }
+                case OpCode.JUMP_IF_NOT_LESS_EQUAL -> {
+                    int target = code[ip++];
+                    Object right = pop();
+                    Object left = pop();
+                    if (left instanceof Integer l && right instanceof Integer r
+                            ? l > r : !test(TokenType.LESS_EQUAL, left, right)) {
+                        ip = target;
+                    }
+                }
+                case OpCode.JUMP_IF_NOT_GREATER -> {
+                    int target = code[ip++];
+                    Object right = pop();
+                    Object left = pop();
+                    if (left instanceof Integer l && right instanceof Integer r
+                            ? l <= r : !test(TokenType.GREATER, left, right)) {
+                        ip = target;
+                    }
+                }
+                case OpCode.JUMP_IF_NOT_GREATER_EQUAL -> {
+                    int target = code[ip++];
+                    Object right = pop();
+                    Object left = pop();
+                    if (left instanceof Integer l && right instanceof Integer r
+                            ? l < r : !test(TokenType.GREATER_EQUAL, left, right)) {
+                        ip = target;
+                    }
+                }
+                case OpCode.JUMP_IF_NOT_EQUAL -> {
+                    int target = code[ip++];
+                    Object right = pop();
+                    if (!Values.equal(pop(), right)) {
+                        ip = target;
+                    }
+                }
+                case OpCode.JUMP_IF_EQUAL -> {
+                    int target = code[ip++];
+                    Object right = pop();
+                    if (Values.equal(pop(), right)) {
+                        ip = target;
+                    }
+                }
+                case OpCode.PUSH_SCOPE -> {
+                    env = new Environment(env, code[ip++]);
+                    frameEnvs[frameCount - 1] = env;
+                }
+                case OpCode.POP_SCOPE -> {
+                    env = env.ancestor(1);
+                    frameEnvs[frameCount - 1] = env;
+                }
+
+                case OpCode.CHECK_CALL -> {
+                    int argc = code[ip++];
+                    int site = code[ip++];
+                    Object callee = stack[sp - 1];
+                    Object kind = callee instanceof VmFunction function ? function.chunk : callee;
+                    if (kind == chunk.checked[site] && kind != null) {
+                        continue; // already checked here
+                    }
+                    if (!(callee instanceof Callable function)) {
+                        throw new RuntimeException("Can only call functions.");
+                    }
+                    if (argc != function.arity()) {
+                        throw new RuntimeException(
+                                "Expected " + function.arity() +
+                                        " arguments but got " + argc);
+                    }
+                    chunk.checked[site] = kind;
+                }
+                case OpCode.CALL -> {
+                    int argc = code[ip++];
+                    frameLeaves[frameCount - 1] = code[ip++];
+                    frameNexts[frameCount - 1] = code[ip++];
+                    Object callee = stack[sp - argc - 1];
+
+                    if (callee instanceof VmFunction function) {
+                        budget.step();
+                        Environment frame = new Environment(function.closure, function.chunk.frameSize);
+                        for (int i = 0; i < argc; i++) {
+                            frame.define(i, stack[sp - argc + i]);
+                        }
+                        sp -= argc + 1;
+
+                        frameIps[frameCount - 1] = ip;
+                        frameEnvs[frameCount - 1] = env;
+                        boolean shared = frameLeaves[frameCount - 1] >= 0 || frameShared[frameCount - 1];
+                        pushFrame(function.chunk, frame);
+                        frameShared[frameCount - 1] = shared;
+
+                        chunk = function.chunk;
+                        code = chunk.code;
+                        constants = chunk.constants;
+                        env = frame;
+                        ip = 0;
+                    } else {
+                        List<Object> arguments = Arrays.asList(Arrays.copyOfRange(stack, sp - argc, sp));
+                        sp -= argc + 1;
+                        push(((Callable) callee).call(execution, arguments));
+                    }
+                }
+                case OpCode.TAIL_CALL -> {
+                    int argc = code[ip++];
+                    Object callee = stack[sp - argc - 1];
+
+                    if (callee instanceof VmFunction function) {
+                        budget.step();
+                        Environment frame = new Environment(function.closure, function.chunk.frameSize);
+                        for (int i = 0; i < argc; i++) {
+                            frame.define(i, stack[sp - argc + i]);
+                        }
+                        sp -= argc + 1;
+
+                        // the calling frame is finished, so the callee takes its place
+                        budget.release(Environment.bytes(chunk.frameSize));
+                        frameChunks[frameCount - 1] = function.chunk;
+                        frameEnvs[frameCount - 1] = frame;
+                        budget.allocate(Environment.bytes(function.chunk.frameSize));
+
+                        chunk = function.chunk;
+                        code = chunk.code;
+                        constants = chunk.constants;
+                        env = frame;
+                        ip = 0;
+                    } else {
+                        List<Object> arguments = Arrays.asList(Arrays.copyOfRange(stack, sp - argc, sp));
+                        sp -= argc + 1;
+                        push(((Callable) callee).call(execution, arguments));
+                    }
+                }
+                case OpCode.RETURN -> {
+                    Object result = pop();
+                    budget.release(Environment.bytes(chunk.frameSize));
+                    frameCount--;
+                    if (frameCount == base) {
+                        return result;
+                    }
+
+                    chunk = frameChunks[frameCount - 1];
+                    code = chunk.code;
+                    constants = chunk.constants;
+                    env = frameEnvs[frameCount - 1];
+                    ip = frameIps[frameCount - 1];
+                    push(result);
+                }
+                case OpCode.EXIT -> throw ExitSignal.INSTANCE;
+                case OpCode.THROW -> throw new RuntimeException((String) constants[code[ip++]]);
+                case OpCode.UNWIND -> {
+                    ip = unwind(frameCount - 1, code[ip] == 1, base);
+                    chunk = frameChunks[frameCount - 1];
+                    code = chunk.code;
+                    constants = chunk.constants;
+                    env = frameEnvs[frameCount - 1];
+                }
+
+                case OpCode.PRINT -> {
+                    write(Values.stringify(pop()));
+                    write("\n");
+                }
+                case OpCode.PRINT_INLINE -> write(Values.stringify(pop()));
+                case OpCode.CLOSURE -> {
+                    Chunk function = (Chunk) constants[code[ip++]];
+                    Environment closure = function.captures ? env : globals;
+                    push(new VmFunction(function, closure, this));
+                }
+                case OpCode.INCLUDE -> include((String) constants[code[ip++]]);
+
+                case OpCode.CELL -> {
+                    int size = code[ip++];
+                    List<Object> values = new ArrayList<>(size);
+                    for (int i = sp - size; i < sp; i++) {
+                        values.add(stack[i]);
+                    }
+                    sp -= size;
+                    push(new Cell(values, budget));
+                }
+                case OpCode.INDEX -> {
+                    Object index = pop();
+                    Object target = pop();
+                    if (!(target instanceof Cell cell)) {
+                        throw new RuntimeException("Can only index a cell.");
+                    }
+                    push(cell.get(index));
+                }
+                case OpCode.CHECK_CELL -> {
+                    if (!(stack[sp - 1] instanceof Cell)) {
+                        throw new RuntimeException("Can only index-assign into a cell.");
+                    }
+                }
+                case OpCode.INDEX_SET -> {
+                    Object value = pop();
+                    Object index = pop();
+                    ((Cell) pop()).set(index, value);
+                }
+
+                default -> throw new IllegalStateException("Unknown opcode " + code[ip - 1]);
+            }
+        }
+    }
+
+    // ---------------- HELPERS ----------------
+
+    private void write(String text) {
+        try {
+            out.append(text);
+        } catch (IOException e) {
+            throw new RuntimeException("output failed: " + e.getMessage());
+        }
+    }
+
+    private void push(Object value) {
+        if (sp == stack.length) {
+            stack = Arrays.copyOf(stack, sp * 2);
+        }
+        stack[sp++] = value;
+    }
+
+    private Object pop() {
+        Object value = stack[--sp];
+        stack[sp] = null;
+        return value;
+    }
+
+    private static boolean test(TokenType operator, Object left, Object right) {
+        return Values.isTruthy(Values.binary(operator, left, right));
+    }
+
+    private void pushFrame(Chunk chunk, Environment env) {
+        if (frameCount >= budget.maxDepth()) {
+            throw new RuntimeException("Stack overflow.");
+        }
+        if (frameCount == frameChunks.length) {
+            frameChunks = Arrays.copyOf(frameChunks, frameCount * 2);
+            frameIps = Arrays.copyOf(frameIps, frameCount * 2);
+            frameEnvs = Arrays.copyOf(frameEnvs, frameCount * 2);
+            frameBases = Arrays.copyOf(frameBases, frameCount * 2);
+            frameLeaves = Arrays.copyOf(frameLeaves, frameCount * 2);
+            frameNexts = Arrays.copyOf(frameNexts, frameCount * 2);
+            frameShared = Arrays.copyOf(frameShared, frameCount * 2);
+        }
+        frameChunks[frameCount] = chunk;
+        frameIps[frameCount] = 0;
+        frameEnvs[frameCount] = env;
+        frameBases[frameCount] = sp;
+        frameShared[frameCount] = false;
+        frameCount++;
+        budget.allocate(Environment.bytes(chunk.frameSize));
+    }
+
+    // Drops the frames above 'base' that an error or exit left behind.
+    private void popFrames(int base) {
+        while (frameCount > base) {
+            frameCount--;
+            budget.release(Environment.bytes(frameChunks[frameCount].frameSize));
+        }
+    }
+
+    // Ends frame 'from' and the frames above it for a 'leave' or 'next' that
+    // has no loop of its own: the first caller whose call was made in a loop
+    // becomes the running frame, and the jump target in it is returned.
+    private int unwind(int from, boolean next, int base) {
+        for (int frame = from; frame > base; frame--) {
+            int target = next ? frameNexts[frame - 1] : frameLeaves[frame - 1];
+            if (target >= 0) {
+                popFrames(frame);
+                int height = frameBases[frame - 1];
+                while (sp > height) {
+                    stack[--sp] = null;
+                }
+                if (next) {
+                    budget.step(); // loop back edge
+                }
+                return target;
+            }
+        }
+        throw next ? LoopSignal.NEXT : LoopSignal.LEAVE;
+    }
+
+    private Object global(int slot) {
+        Object value = globals.get(slot);
+        if (value == Environment.UNDEFINED) {
+            throw undefined(slot);
+        }
+        return value;
+    }
+
+    private void setGlobal(int slot, Object value) {
+        if (globals.get(slot) == Environment.UNDEFINED) {
+            throw undefined(slot);
+        }
+        globals.define(slot, value);
+    }
+
+    private RuntimeException undefined(int slot) {
+        return new RuntimeException("Undefined variable '" + resolver.globalName(slot) + "'.");
+    }
+
+    private Object lookUp(Environment env, Binding binding) {
+        for (int i = 0; i < binding.depths.length; i++) {
+            Object value = env.ancestor(binding.depths[i]).get(binding.slots[i]);
+            if (value != Environment.UNDEFINED) {
+                return value;
+            }
+        }
+        return global(binding.global);
+    }
+
+    private void assign(Environment env, Binding binding, Object value) {
+        for (int i = 0; i < binding.depths.length; i++) {
+            Environment target = env.ancestor(binding.depths[i]);
+            if (target.get(binding.slots[i]) != Environment.UNDEFINED) {
+                target.define(binding.slots[i], value);
+                return;
+            }
+        }
+        setGlobal(binding.global, value);
+    }
+}
@@ -0,0 +1,34 @@
+package com.simpleflow.lang.vm;
+
+import java.util.List;
+
+import com.simpleflow.lang.interpreter.Callable;
+import com.simpleflow.lang.interpreter.Environment;
+import com.simpleflow.lang.interpreter.Execution;
+
+class VmFunction implements Callable {
+    final Chunk chunk;
+    final Environment closure;
+    private final VM vm;
+
+    VmFunction(Chunk chunk, Environment closure, VM vm) {
+        this.chunk = chunk;
+        this.closure = closure;
+        this.vm = vm;
+    }
+
+    @Override
+    public int arity() {
+        return chunk.arity;
+    }
+
+    @Override
+    public Object call(Execution execution, List<Object> arguments) {
+        return vm.invoke(this, arguments);
+    }
+
+    @Override
+    public Environment closure() {
+        return closure;
+    }
+}
@@ -0,0 +1,112 @@
+package com.simpleflow.runner.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.simpleflow.lang.Main;
+import com.simpleflow.lang.interpreter.Program;
+
+// Bounded LRU cache of resolved programs, keyed by a SHA-256 of the source.
+// Programs are immutable once resolved, so one entry can serve concurrent runs.
+@Component
+public class ProgramCache {
+
+    private final int maxSize;
+    private final long ttlMillis;
+    private final Map<String, Entry> entries;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    private record Entry(String source, Program program, long createdAt) {
+    }
+
+    public ProgramCache(
+            @Value("${simpleflow.cache.max-size:256}") int maxSize,
+            @Value("${simpleflow.cache.ttl-seconds:600}") long ttlSeconds) {
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlSeconds * 1000;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > ProgramCache.this.maxSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    // Throws ParseError for invalid source; failures are not cached.
+    public Program get(String source) {
+        String key = hash(source);
+        long now = System.currentTimeMillis();
+
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry != null && now - entry.createdAt() > ttlMillis) {
+                entries.remove(key);
+                expirations.increment();
+                entry = null;
+            }
+        }
+
+        if (entry != null && entry.source().equals(source)) {
+            hits.increment();
+            return entry.program();
+        }
+
+        misses.increment();
+        Program program = Main.compile(source);
+
+        if (maxSize > 0) {
+            synchronized (entries) {
+                entries.put(key, new Entry(source, program, now));
+            }
+        }
+        return program;
+    }
+
+    public Map<String, Object> stats() {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        long total = hitCount + missCount;
+
+        int size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("hitRate", total == 0 ? 0.0 : (double) hitCount / total);
+        stats.put("evictions", evictions.sum());
+        stats.put("expirations", expirations.sum());
+        stats.put("size", size);
+        stats.put("maxSize", maxSize);
+        stats.put("ttlSeconds", ttlMillis / 1000);
+        return stats;
+    }
+
+    private static String hash(String source) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(source.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -1,33 +1,82 @@
 package com.simpleflow.runner.controller;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeoutException;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import com.simpleflow.lang.Main;
+import com.simpleflow.lang.interpreter.BoundedOutput;
+import com.simpleflow.lang.interpreter.Budget;
+import com.simpleflow.lang.parser.ParseError;
+import com.simpleflow.runner.cache.ProgramCache;
+import com.simpleflow.runner.util.CodeExecutor;
+import com.simpleflow.runner.util.SseOutput;
 
 @RestController
 @CrossOrigin(origins = "*")
 public class RunController {
 
+    private static final long TIMEOUT_GRACE_MS = 250;
+
+    // a stream also has to wait its turn in the queue and for a slow client
+    private static final long STREAM_EXTRA_MS = 10_000;
+
+    private final ProgramCache programCache;
+    private final CodeExecutor codeExecutor;
+    private final long timeoutMs;
+    private final long maxSteps;
+    private final int maxDepth;
+    private final long maxOutputBytes;
+    private final long maxMemoryBytes;
+
+    public RunController(
+            ProgramCache programCache,
+            CodeExecutor codeExecutor,
+            @Value("${simpleflow.run.timeout-ms:2000}") long timeoutMs,
+            @Value("${simpleflow.run.max-steps:50000000}") long maxSteps,
+            @Value("${simpleflow.run.max-depth:10000}") int maxDepth,
+            @Value("${simpleflow.run.max-output-bytes:1048576}") long maxOutputBytes,
+            @Value("${simpleflow.run.max-memory-bytes:268435456}") long maxMemoryBytes) {
+        this.programCache = programCache;
+        this.codeExecutor = codeExecutor;
+        this.timeoutMs = timeoutMs;
+        this.maxSteps = maxSteps;
+        this.maxDepth = maxDepth;
+        this.maxOutputBytes = maxOutputBytes;
+        this.maxMemoryBytes = maxMemoryBytes;
+    }
+
     @GetMapping("/health")
     public Map<String, String> health() {
         return Map.of("status", "ok");
     }
 
+    @GetMapping("/cache/stats")
+    public Map<String, Object> cacheStats() {
+        return programCache.stats();
+    }
+
+    @GetMapping("/executor/stats")
+    public Map<String, Object> executorStats() {
+        return codeExecutor.stats();
+    }
+
     @PostMapping("/run")
-    public Map<String, String> run(@RequestBody Map<String, String> body) {
+    public ResponseEntity<Map<String, String>> run(@RequestBody Map<String, String> body) {
 
         Map<String, String> response = new HashMap<>();
         response.put("output", "");
@@ -36,16 +85,24 @@ public class RunController {
         String code = body.get("code");
         if (code == null || code.isBlank()) {
             response.put("error", "No code provided");
-            return response;
+            return ResponseEntity.ok(response);
         }
 
-        ExecutorService executor = Executors.newSingleThreadExecutor();
+        // "engine": "vm" runs the bytecode VM instead of the tree-walker
+        boolean useVm = "vm".equals(body.get("engine"));
 
+        // the script stops itself once its budget runs out; the grace period
+        // lets that happen before the executor gives up and interrupts it
         try {
-            Future<String> future = executor.submit(() -> Main.run(code));
-
-            // ⏱ execution timeout (critical)
-            String output = future.get(2, TimeUnit.SECONDS);
+            String output = codeExecutor.runWithTimeout(() -> {
+                try {
+                    return Main.run(programCache.get(code), useVm, budget(), maxOutputBytes);
+                } catch (ParseError e) {
+                    return Main.formatParseError(code, e);
+                } catch (RuntimeException e) {
+                    return "Runtime error: " + e.getMessage();
+                }
+            }, timeoutMs + TIMEOUT_GRACE_MS); // ⏱ execution timeout (critical)
 
             if (output != null) {
                 // normalize output for frontend
@@ -54,20 +111,80 @@ public class RunController {
 
             response.put("output", output == null ? "" : output);
 
+        } catch (RejectedExecutionException e) {
+            response.put("error", "Runner is busy, try again shortly");
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(response);
+
         } catch (TimeoutException e) {
-            response.put("error", "Execution timed out (2000ms)");
+            response.put("error", "Execution timed out (" + timeoutMs + "ms)");
 
         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             response.put("error", "Execution interrupted");
 
         } catch (ExecutionException e) {
             Throwable cause = e.getCause();
             response.put("error", cause != null ? cause.getMessage() : e.getMessage());
+        }
+
+        return ResponseEntity.ok(response);
+    }
+
+    // Like /run, but output is sent as server-sent events while the program
+    // runs: "output" {text} as it is produced, "error" {error} if the run
+    // failed, and finally "done" {truncated}.
+    @PostMapping(path = "/run/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> runStream(@RequestBody Map<String, String> body) {
+        SseEmitter emitter = new SseEmitter(timeoutMs + TIMEOUT_GRACE_MS + STREAM_EXTRA_MS);
+        SseOutput sse = new SseOutput(emitter);
 
-        } finally {
-            executor.shutdownNow();
+        String code = body.get("code");
+        if (code == null || code.isBlank()) {
+            finish(sse, emitter, "No code provided", false);
+            return ResponseEntity.ok(emitter);
         }
 
-        return response;
+        boolean useVm = "vm".equals(body.get("engine"));
+
+        try {
+            codeExecutor.execute(() -> stream(code, useVm, sse, emitter));
+        } catch (RejectedExecutionException e) {
+            finish(sse, emitter, "Runner is busy, try again shortly", false);
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(emitter);
+        }
+
+        return ResponseEntity.ok(emitter);
+    }
+
+    private Budget budget() {
+        return new Budget(maxSteps, timeoutMs, maxDepth, maxMemoryBytes);
+    }
+
+    private void stream(String code, boolean useVm, SseOutput sse, SseEmitter emitter) {
+        BoundedOutput output = new BoundedOutput(sse, maxOutputBytes);
+        String error = null;
+        try {
+            Main.run(programCache.get(code), useVm, budget(), output);
+        } catch (ParseError e) {
+            error = Main.formatParseError(code, e);
+        } catch (RuntimeException e) {
+            error = "Runtime error: " + e.getMessage();
+        }
+        finish(sse, emitter, error, output.truncated());
+    }
+
+    private static void finish(SseOutput sse, SseEmitter emitter, String error, boolean truncated) {
+        sse.close();
+        try {
+            sse.flush();
+            if (error != null) {
+                sse.send("error", Map.of("error", error));
+            }
+            sse.send("done", Map.of("truncated", truncated));
+            emitter.complete();
+        } catch (IOException | IllegalStateException e) {
+            // the client is gone or the stream already timed out
+            emitter.completeWithError(e);
+        }
     }
 }
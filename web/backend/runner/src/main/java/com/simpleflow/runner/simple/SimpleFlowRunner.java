@@ -1,39 +1,24 @@
 package com.simpleflow.runner.simple;
 
-import com.simpleflow.lang.lexer.Lexer;
-import com.simpleflow.lang.lexer.Token;
-import com.simpleflow.lang.parser.Parser;
-import com.simpleflow.lang.interpreter.Interpreter;
-import com.simpleflow.lang.ast.Stmt;
-
-import java.io.ByteArrayOutputStream;
-import java.io.PrintStream;
-import java.util.List;
+import com.simpleflow.lang.Main;
+import com.simpleflow.lang.interpreter.Budget;
+import com.simpleflow.lang.interpreter.Program;
 
 public class SimpleFlowRunner {
 
     public static String run(String source) {
-        // Capture System.out
-        PrintStream originalOut = System.out;
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        System.setOut(new PrintStream(outputStream));
+        // Output goes to a buffer owned by this run, so runs never share System.out
+        StringBuilder output = new StringBuilder();
 
         try {
-            Lexer lexer = new Lexer(source);
-            List<Token> tokens = lexer.scanTokens();
-
-            Parser parser = new Parser(tokens);
-            List<Stmt> statements = parser.parse();
-
-            Interpreter interpreter = new Interpreter();
-            interpreter.interpret(statements);
+            // Main.compile optimizes and resolves, like every other entry point
+            Program program = Main.compile(source);
+            Main.run(program, false, Budget.unlimited(), output);
 
         } catch (RuntimeException e) {
             return "Error: " + e.getMessage();
-        } finally {
-            System.setOut(originalOut);
         }
 
-        return outputStream.toString().trim();
+        return output.toString().trim();
     }
 }
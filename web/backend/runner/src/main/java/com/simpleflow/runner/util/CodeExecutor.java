@@ -1,26 +1,136 @@
 package com.simpleflow.runner.util;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
 
-public class CodeExecutor {
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
 
-    public static String runWithTimeout(Callable<String> task, long timeoutMs) throws Exception {
+// One shared, bounded pool for every run. At most maxConcurrency programs run
+// at once and at most queueCapacity wait; anything beyond that is rejected
+// with RejectedExecutionException so the caller can answer 429.
+@Component
+public class CodeExecutor implements AutoCloseable {
 
-        ExecutorService executor = Executors.newSingleThreadExecutor();
-        Future<String> future = executor.submit(task);
+    private final ThreadPoolExecutor pool;
 
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    private final LongAdder started = new LongAdder();
+    private final LongAdder finished = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder runNanos = new LongAdder();
+    private final LongAccumulator maxWaitNanos = new LongAccumulator(Math::max, 0);
+    private final LongAccumulator maxRunNanos = new LongAccumulator(Math::max, 0);
+
+    public CodeExecutor(
+            @Value("${simpleflow.executor.max-concurrency:0}") int maxConcurrency,
+            @Value("${simpleflow.executor.queue-capacity:64}") int queueCapacity,
+            @Value("${simpleflow.executor.thread-stack-size:0}") long threadStackSize) {
+        int threads = maxConcurrency > 0 ? maxConcurrency : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadIds = new AtomicInteger();
+
+        this.pool = new ThreadPoolExecutor(
+                threads, threads,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                task -> {
+                    // the tree-walking interpreter nests Java frames for every script call
+                    Thread thread = new Thread(null, task, "simpleflow-run-" + threadIds.incrementAndGet(), threadStackSize);
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    public String runWithTimeout(Callable<String> task, long timeoutMs)
+            throws InterruptedException, ExecutionException, TimeoutException {
+
+        Future<String> future = submit(task);
         try {
             return future.get(timeoutMs, TimeUnit.MILLISECONDS);
         } catch (TimeoutException e) {
-            future.cancel(true); // interrupt execution
-            throw new RuntimeException("Execution timed out (" + timeoutMs + "ms)");
-        } finally {
-            executor.shutdownNow();
+            timedOut.increment();
+            future.cancel(true); // interrupt execution, or drop it if still queued
+            throw e;
+        }
+    }
+
+    // For runs that report back on their own, like streamed ones. The task has
+    // to stop itself; its Budget's time limit is what bounds it.
+    public void execute(Runnable task) {
+        submit(() -> {
+            task.run();
+            return null;
+        });
+    }
+
+    private <T> Future<T> submit(Callable<T> task) {
+        long queuedAt = System.nanoTime();
+        Future<T> future;
+        try {
+            future = pool.submit(() -> {
+                long startedAt = System.nanoTime();
+                record(waitNanos, maxWaitNanos, startedAt - queuedAt);
+                started.increment();
+                try {
+                    return task.call();
+                } finally {
+                    record(runNanos, maxRunNanos, System.nanoTime() - startedAt);
+                    finished.increment();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw e;
         }
+        submitted.increment();
+        return future;
+    }
+
+    public Map<String, Object> stats() {
+        long startedCount = started.sum();
+        long finishedCount = finished.sum();
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("maxConcurrency", pool.getMaximumPoolSize());
+        stats.put("active", pool.getActiveCount());
+        stats.put("queueDepth", pool.getQueue().size());
+        stats.put("queueCapacity", pool.getQueue().size() + pool.getQueue().remainingCapacity());
+        stats.put("submitted", submitted.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("timedOut", timedOut.sum());
+        stats.put("completed", finishedCount);
+        stats.put("avgWaitMs", startedCount == 0 ? 0.0 : millis(waitNanos.sum()) / startedCount);
+        stats.put("maxWaitMs", millis(maxWaitNanos.get()));
+        stats.put("avgRunMs", finishedCount == 0 ? 0.0 : millis(runNanos.sum()) / finishedCount);
+        stats.put("maxRunMs", millis(maxRunNanos.get()));
+        return stats;
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+
+    private static void record(LongAdder total, LongAccumulator max, long nanos) {
+        total.add(nanos);
+        max.accumulate(nanos);
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
     }
 }
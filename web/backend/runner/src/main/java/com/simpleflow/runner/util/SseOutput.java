@@ -0,0 +1,105 @@
+package com.simpleflow.runner.util;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+// Program output for /run/stream. Text is batched and sent as "output"
+// events of {"text": ...}, at most every FLUSH_INTERVAL_MS or FLUSH_CHARS.
+// A shared timer also flushes every FLUSH_INTERVAL_MS, so text the program
+// wrote before going quiet is not held back until it writes again or ends.
+// send() blocks while the client is not reading, which holds the program
+// back until it catches up; the run's time limit still counts meanwhile.
+public class SseOutput implements Appendable {
+
+    private static final int FLUSH_CHARS = 8192;
+    private static final long FLUSH_INTERVAL_MS = 50;
+
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "simpleflow-sse-flush");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final SseEmitter emitter;
+    private final StringBuilder pending = new StringBuilder(); // also the lock for sending
+    private final ScheduledFuture<?> timedFlush;
+    private long lastFlush = System.currentTimeMillis();
+
+    public SseOutput(SseEmitter emitter) {
+        this.emitter = emitter;
+        this.timedFlush = TIMER.scheduleWithFixedDelay(
+                this::timedFlush, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public Appendable append(CharSequence text) throws IOException {
+        synchronized (pending) {
+            pending.append(text);
+            flushIfDue();
+        }
+        return this;
+    }
+
+    @Override
+    public Appendable append(CharSequence text, int start, int end) throws IOException {
+        synchronized (pending) {
+            pending.append(text, start, end);
+            flushIfDue();
+        }
+        return this;
+    }
+
+    @Override
+    public Appendable append(char c) throws IOException {
+        synchronized (pending) {
+            pending.append(c);
+            flushIfDue();
+        }
+        return this;
+    }
+
+    public void flush() throws IOException {
+        synchronized (pending) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            send("output", Map.of("text", pending.toString()));
+            pending.setLength(0);
+            lastFlush = System.currentTimeMillis();
+        }
+    }
+
+    // Stops the timed flushes; call before the last flush() of a run.
+    public void close() {
+        timedFlush.cancel(false);
+    }
+
+    public void send(String event, Map<String, ?> data) throws IOException {
+        synchronized (pending) {
+            emitter.send(SseEmitter.event().name(event).data(data, MediaType.APPLICATION_JSON));
+        }
+    }
+
+    private void flushIfDue() throws IOException {
+        if (pending.length() >= FLUSH_CHARS
+                || System.currentTimeMillis() - lastFlush >= FLUSH_INTERVAL_MS) {
+            flush();
+        }
+    }
+
+    private void timedFlush() {
+        try {
+            flush();
+        } catch (IOException | IllegalStateException e) {
+            // the client is gone; the run finds out on its own next send
+            timedFlush.cancel(false);
+        }
+    }
+}
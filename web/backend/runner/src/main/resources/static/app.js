@@ -373,10 +373,13 @@ async function runCode() {
   currentController = new AbortController();
 
   try {
-    // Use /run for local Spring Boot (port 8080), or /api/run for Vercel (port 3000 / cloud)
-    const runEndpoint = window.location.port === "8080" ? "/run" : "/api/run";
+    // Stream from /run/stream on local Spring Boot (port 8080), or use /api/run for Vercel (port 3000 / cloud)
+    if (window.location.port === "8080") {
+      await runStreaming(start);
+      return;
+    }
 
-    const response = await fetch(runEndpoint, {
+    const response = await fetch("/api/run", {
       method: "POST",
       headers: { "Content-Type": "application/json" },
       body: JSON.stringify({ code: editor.value }),
@@ -386,14 +389,14 @@ async function runCode() {
     const data = await response.json();
     const elapsed = Math.round(performance.now() - start);
 
+    // output that came before an error (or lexer warnings) is still shown
+    setOutput(data.output);
     if (data.error) {
       setError(data.error);
       switchTab("errors");
       setStatus(`Error in ${elapsed}ms`);
       return;
     }
-
-    setOutput(data.output);
     setStatus(`Completed in ${elapsed}ms`);
   } catch (err) {
     if (err.name === "AbortError") {
@@ -408,6 +411,101 @@ async function runCode() {
   }
 }
 
+// Reads /run/stream, a server-sent event stream of "output" {text},
+// "error" {error} and "done" {truncated}, showing output as it arrives.
+async function runStreaming(start) {
+  const response = await fetch("/run/stream", {
+    method: "POST",
+    headers: { "Content-Type": "application/json" },
+    body: JSON.stringify({ code: editor.value }),
+    signal: currentController.signal
+  });
+
+  if (!response.ok) {
+    // e.g. 429 when the runner is busy
+    setOutput("");
+    setError(await errorBody(response));
+    switchTab("errors");
+    setStatus(`Error ${response.status}`);
+    return;
+  }
+
+  const reader = response.body.pipeThrough(new TextDecoderStream()).getReader();
+  let buffer = "";
+  let text = "";
+  let error = "";
+  let truncated = false;
+  setOutput("");
+
+  while (true) {
+    const { value, done } = await reader.read();
+    if (done) {
+      break;
+    }
+    buffer += value;
+
+    let end;
+    while ((end = buffer.indexOf("\n\n")) !== -1) {
+      const event = parseEvent(buffer.slice(0, end));
+      buffer = buffer.slice(end + 2);
+
+      if (event.name === "output") {
+        text += event.data.text;
+        setOutput(text);
+        output.scrollTop = output.scrollHeight;
+      } else if (event.name === "error") {
+        error = event.data.error;
+      } else if (event.name === "done") {
+        truncated = event.data.truncated === true;
+      }
+    }
+  }
+
+  const elapsed = Math.round(performance.now() - start);
+  setOutput(text.replace(/\r\n/g, "\n").trim());
+  const notice = truncated ? " (output truncated)" : "";
+
+  if (error) {
+    setError(error);
+    switchTab("errors");
+    setStatus(`Error in ${elapsed}ms${notice}`);
+    return;
+  }
+  setStatus(`Completed in ${elapsed}ms${notice}`);
+}
+
+// The message in a failed response: an SSE "error" event, a JSON
+// {error} or {message}, or else the body text or status itself.
+async function errorBody(response) {
+  const body = await response.text().catch(() => "");
+  const block = body.split("\n\n").find((part) => part.includes("event:error"));
+  try {
+    if (block) {
+      return parseEvent(block).data.error;
+    }
+    const data = JSON.parse(body);
+    if (data.error || data.message) {
+      return data.error || data.message;
+    }
+  } catch (err) {
+    // not SSE or JSON: fall through to the text
+  }
+  return body.trim() || `Runner returned ${response.status} ${response.statusText}`;
+}
+
+function parseEvent(block) {
+  let name = "message";
+  const data = [];
+  for (const line of block.split("\n")) {
+    if (line.startsWith("event:")) {
+      name = line.slice(6).trim();
+    } else if (line.startsWith("data:")) {
+      data.push(line.slice(5).replace(/^ /, ""));
+    }
+  }
+  return { name, data: data.length ? JSON.parse(data.join("\n")) : {} };
+}
+
 function clearOutput() {
   setOutput("");
   setError("");
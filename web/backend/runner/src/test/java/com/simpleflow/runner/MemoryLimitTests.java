@@ -0,0 +1,50 @@
+package com.simpleflow.runner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+import com.simpleflow.lang.Main;
+import com.simpleflow.lang.interpreter.Budget;
+
+// The memory limit is on what a run holds, not on everything it ever
+// allocated. Budgets match the defaults in application.properties.
+class MemoryLimitTests {
+
+	private static final long MAX_STEPS = 50_000_000;
+	private static final long MAX_MEMORY_BYTES = 256L << 20;
+
+	@Test
+	void shortLivedCellsDoNotAddUp() {
+		String source = """
+				store n = 0
+				loop (store i = 0; i < 4000000; i++) {
+				    store p = @(i, i)
+				    n = p[1]
+				}
+				show n
+				""";
+		for (boolean useVm : new boolean[] { false, true }) {
+			assertThat(Main.run(source, useVm, budget())).isEqualTo("3999999");
+		}
+	}
+
+	@Test
+	void cellsThatAreKeptStillStopTheRun() {
+		String source = """
+				store keep = @()
+				loop (store i = 0; i < 4000000; i++) {
+				    push(keep, @(i, i))
+				}
+				show length(keep)
+				""";
+		for (boolean useVm : new boolean[] { false, true }) {
+			assertThat(Main.run(source, useVm, budget())).startsWith("Runtime error: Memory limit");
+		}
+	}
+
+	private static Budget budget() {
+		return new Budget(MAX_STEPS, 0, 0, MAX_MEMORY_BYTES);
+	}
+
+}
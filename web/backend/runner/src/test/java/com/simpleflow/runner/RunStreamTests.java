@@ -0,0 +1,64 @@
+package com.simpleflow.runner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+// Output written just before a long quiet stretch still reaches the client
+// while the program runs, not only when it ends.
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+		"simpleflow.run.timeout-ms=1500",
+		"simpleflow.run.max-steps=100000000000" })
+class RunStreamTests {
+
+	@LocalServerPort
+	private int port;
+
+	@Test
+	void outputArrivesBeforeTheRunEnds() throws Exception {
+		String code = """
+				show 1
+				show 2
+				loop (store i = 0; i < 2000000000; i++) {
+				}
+				""";
+		HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/run/stream"))
+				.header("Content-Type", "application/json")
+				.POST(HttpRequest.BodyPublishers.ofString("{\"code\": \"" + code.replace("\n", "\\n") + "\"}"))
+				.build();
+		HttpResponse<InputStream> response = HttpClient.newHttpClient()
+				.send(request, HttpResponse.BodyHandlers.ofInputStream());
+
+		// when each kind of event last arrived; the second show is written
+		// right after the first, inside the same FLUSH_INTERVAL_MS
+		Map<String, Long> arrivals = new LinkedHashMap<>();
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(response.body(), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.startsWith("event:")) {
+					arrivals.put(line.substring("event:".length()).trim(), System.nanoTime());
+				}
+			}
+		}
+
+		assertThat(arrivals).containsKeys("output", "done");
+		// the loop runs until the 1500 ms time limit stops it
+		long gapMs = (arrivals.get("done") - arrivals.get("output")) / 1_000_000;
+		assertThat(gapMs).isGreaterThan(500);
+	}
+
+}